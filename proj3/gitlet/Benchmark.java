@@ -0,0 +1,989 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+
+/** Timing harness for gitlet's hot paths, run in the manner of JMH: each
+ *  benchmark is warmed up untimed, then timed over several iterations,
+ *  and its mean rate is reported.  Usage:
+ *      java gitlet.Benchmark [--format=FORMAT] NAME [SIZE]
+ *      java gitlet.Benchmark [--format=FORMAT] suite [SCALE...]
+ *  from an empty scratch directory, in which the benchmark builds its
+ *  own repository.  The suite times add, commit, status, log, checkout,
+ *  find and diff on a SyntheticRepo of each SCALE (by default small and
+ *  medium; see SCALES), each generated by a separate JVM in a directory
+ *  of its own.  FORMAT is text (the default), csv or json; the last two
+ *  give a record per result, with the benchmark, scale (the size, for
+ *  a single benchmark), metric, value and unit, so that runs can be
+ *  kept and compared.
+ *  @author Darren Wang
+ */
+public class Benchmark {
+
+    /** Run the benchmark named by ARGS[0] at size ARGS[1], after an
+     *  optional --format=FORMAT. */
+    public static void main(String... args) {
+        if (args.length > 0 && args[0].startsWith("--format=")) {
+            format = parseFormat(args[0].substring("--format=".length()));
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length == 0 || format == null) {
+            System.out.println("Usage: java gitlet.Benchmark"
+                               + " [--format=text|csv|json] NAME [SIZE]");
+            return;
+        }
+        if (join(".gitlet").exists()) {
+            System.out.println("Run benchmarks from an empty directory.");
+            return;
+        }
+        benchmark = args[0];
+        List<String> rest = List.of(args).subList(1, args.length);
+        if (args[0].equals("suite") || args[0].equals("scale")) {
+            for (String name : rest) {
+                if (!SCALES.containsKey(name)) {
+                    System.out.println("No scale with that name exists.");
+                    return;
+                }
+            }
+        }
+        int size = args.length > 1 && args[1].matches("\\d{1,9}")
+            ? Integer.parseInt(args[1]) : SIZE;
+        scale = String.valueOf(size);
+        if (format == Format.CSV) {
+            System.out.println(CSV_HEADER);
+        }
+        switch (args[0]) {
+        case "lookup" -> lookup(size);
+        case "codec" -> codec(size);
+        case "status" -> status(size);
+        case "scan" -> scan(size);
+        case "mergebase" -> mergeBase(size);
+        case "diff" -> diff(size);
+        case "commit" -> commit(size);
+        case "add" -> add(size);
+        case "durability" -> durability(size);
+        case "cache" -> cache(size);
+        case "daemon" -> daemon(size);
+        case "find" -> find(size);
+        case "resolve" -> resolve(size);
+        case "log" -> log(size);
+        case "chunk" -> chunk(size);
+        case "checkout" -> checkout(size);
+        case "gc" -> gc(size);
+        case "bitmaps" -> bitmaps(size);
+        case "suite" -> suite(rest.isEmpty() ? DEFAULT_SCALES : rest);
+        case "scale" -> scale(rest.isEmpty() ? DEFAULT_SCALES.get(0)
+                              : rest.get(0));
+        default -> System.out.println("No benchmark with that name exists.");
+        }
+        if (format == Format.JSON) {
+            System.out.println("[");
+            System.out.println(String.join(",\n", RECORDS));
+            System.out.println("]");
+        }
+    }
+
+    /** Kinds of output. */
+    enum Format {
+        /** Aligned columns, for people. */
+        TEXT,
+        /** A header, then comma-separated records. */
+        CSV,
+        /** An array of objects, printed at the end. */
+        JSON
+    }
+
+    /** Return the format named NAME, in either case, or null if there is
+     *  none. */
+    private static Format parseFormat(String name) {
+        for (Format f : Format.values()) {
+            if (f.name().equalsIgnoreCase(name)) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    /** Report VALUE, in UNIT, as the result NAME of the benchmark being
+     *  run, in the chosen format.  Names and units have no commas or
+     *  quotes, so need no escaping. */
+    static void report(String name, String value, String unit) {
+        switch (format) {
+        case TEXT -> System.out.printf("%-24s %14s %s%n", name, value,
+                                       unit);
+        case CSV -> System.out.println(String.join(",", benchmark, scale,
+                                                   name, value, unit));
+        default -> RECORDS.add(String.format(
+            "  {\"benchmark\": \"%s\", \"scale\": \"%s\", \"metric\": \"%s\","
+            + " \"value\": %s, \"unit\": \"%s\"}",
+            benchmark, scale, name, value, unit));
+        }
+    }
+
+    /** Report VALUE as report does. */
+    static void report(String name, double value, String unit) {
+        report(name, String.format(Locale.ROOT, "%.1f", value), unit);
+    }
+
+    /** Report VALUE as report does. */
+    static void report(String name, long value, String unit) {
+        report(name, Long.toString(value), unit);
+    }
+
+    /** Run BODY, which performs OPS operations, WARMUP times untimed and
+     *  then ITERATIONS times timed, and report the mean rate as NAME. */
+    static void measure(String name, int ops, Runnable body) {
+        for (int i = 0; i < WARMUP; i += 1) {
+            body.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i += 1) {
+            body.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report(name, ops * ITERATIONS / seconds, "ops/s");
+    }
+
+    /** Compare object lookups by sha1 in the loose, directory-per-prefix
+     *  layout against lookups through the mapped pack index, on a
+     *  repository of N blobs. */
+    static void lookup(int n) {
+        Command.init();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            ids.add(Blob.write(("blob " + i).getBytes()));
+        }
+        Collections.shuffle(ids, new Random(SEED));
+
+        measure("lookup.loose.exists", n, () -> {
+            for (String id : ids) {
+                sink += getObjectsFile(id).exists() ? 1 : 0;
+            }
+        });
+        measure("lookup.loose.read", n, () -> {
+            for (String id : ids) {
+                sink += readContents(getObjectsFile(id)).length;
+            }
+        });
+        Pack.repack();
+        measure("lookup.pack.contains", n, () -> {
+            for (String id : ids) {
+                sink += Pack.contains(id) ? 1 : 0;
+            }
+        });
+        measure("lookup.pack.read", n, () -> {
+            for (String id : ids) {
+                sink += Pack.read(id).length;
+            }
+        });
+    }
+
+    /** Compare Java serialization with Codec on a commit tracking N
+     *  files, reporting encode and decode rates and encoded sizes. */
+    static void codec(int n) {
+        Objects commit = new Objects();
+        for (int i = 0; i < n; i += 1) {
+            String file = "file" + i + ".txt";
+            commit.index.put(file, new Index(sha1(file), file));
+        }
+        byte[] java = serialize(commit);
+        byte[] binary = Codec.encode(commit);
+        report("codec.java.size", java.length, "bytes");
+        report("codec.binary.size", binary.length, "bytes");
+
+        int ops = Math.max(1, SIZE / Math.max(1, n / 100));
+        measure("codec.java.encode", ops, () -> {
+            for (int i = 0; i < ops; i += 1) {
+                sink += serialize(commit).length;
+            }
+        });
+        measure("codec.binary.encode", ops, () -> {
+            for (int i = 0; i < ops; i += 1) {
+                sink += Codec.encode(commit).length;
+            }
+        });
+        measure("codec.java.decode", ops, () -> {
+            for (int i = 0; i < ops; i += 1) {
+                sink += deserialize(java, Objects.class).index.size();
+            }
+        });
+        measure("codec.binary.decode", ops, () -> {
+            for (int i = 0; i < ops; i += 1) {
+                sink += Codec.decode(binary).index.size();
+            }
+        });
+    }
+
+    /** Time the scan for modified files in a repository tracking N
+     *  files, first with an empty stat cache and then with a warm one. */
+    static void status(int n) {
+        Command.init();
+        Objects stage = readStage(INDEX);
+        for (int i = 0; i < n; i += 1) {
+            String file = "f" + i + ".txt";
+            writeContents(join(file), "file " + i + "\n");
+            String sha1 = Blob.hash(join(file));
+            Blob.write(join(file), sha1);
+            stage.index.put(file, new Index(sha1, file));
+        }
+        writeStage(INDEX, stage);
+        Command.commit("benchmark");
+
+        long start = System.nanoTime();
+        sink += modifiedFiles().size();
+        report("status.cold", 1e9 / (System.nanoTime() - start), "ops/s");
+        measure("status.warm", 1, () -> sink += modifiedFiles().size());
+    }
+
+    /** Time hashing N working files of 64 KiB with an empty stat cache,
+     *  on 1, 2, 4 and 8 threads, reporting files hashed per second. */
+    static void scan(int n) {
+        Command.init();
+        Random random = new Random(SEED);
+        List<String> files = new ArrayList<>();
+        byte[] contents = new byte[1 << 16];
+        for (int i = 0; i < n; i += 1) {
+            random.nextBytes(contents);
+            writeContents(join("f" + i), (Object) contents);
+            files.add("f" + i);
+        }
+        report("scan.processors", Runtime.getRuntime().availableProcessors(),
+               "cpus");
+        for (int t = 1; t <= 8; t *= 2) {
+            Files.threads = t;
+            measure("scan.threads." + t, n, () -> {
+                Objects stage = new Objects("stage");
+                sink += hashWorkingFiles(files, stage).size();
+            });
+        }
+    }
+
+    /** Time finding the merge base of two branches that each add 10
+     *  commits to a shared history of N commits. */
+    static void mergeBase(int n) {
+        Command.init();
+        Objects commit = copyObjectsHash(getCurrHead());
+        for (int i = 0; i < n; i += 1) {
+            commit.makeCommit("shared " + i);
+            writeObject(commit);
+        }
+        Command.branch("other");
+        for (String branch : new String[] { "other", "master" }) {
+            writeHead(branch);
+            for (int i = 0; i < 10; i += 1) {
+                commit.makeCommit(branch + " " + i);
+                writeObject(commit);
+            }
+        }
+        String head = getCurrHead(), other = getHeadGeneral("other");
+        CommitGraph.reset(false);
+        long start = System.nanoTime();
+        sink += CommitGraph.get().size();
+        report("mergebase.load", 1e9 / (System.nanoTime() - start),
+               "ops/s");
+        measure("mergebase.find", 1000, () -> {
+            for (int i = 0; i < 1000; i += 1) {
+                sink += CommitGraph.get().mergeBase(head, other).length();
+            }
+        });
+    }
+
+    /** Time diffing two N-line files that differ in 20 places, and two
+     *  that differ in N / 100 places, with each of Diff's algorithms.  A
+     *  quarter of the lines are the same "}", as in code, and the two
+     *  files share no String objects, as if read from disk. */
+    static void diff(int n) {
+        Random random = new Random(SEED);
+        List<String> lines1 = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            lines1.add(i % 4 == 3 ? "}" : "line " + random.nextInt());
+        }
+        for (int edits : new int[] { 20, n / 100 }) {
+            List<String> lines2 = new ArrayList<>();
+            for (String line : lines1) {
+                lines2.add(new String(line));
+            }
+            for (int i = 0; i < edits; i += 1) {
+                int k = random.nextInt(lines2.size());
+                switch (i % 3) {
+                case 0 -> lines2.set(k, "changed " + i);
+                case 1 -> lines2.add(k, "inserted " + i);
+                default -> lines2.remove(k);
+                }
+            }
+            Diff diff = new Diff();
+            for (Diff.Algorithm alg : Diff.Algorithm.values()) {
+                String name = "diff." + alg.name().toLowerCase() + "."
+                    + edits;
+                measure(name, 1, () -> {
+                    diff.setAlgorithm(alg);
+                    diff.setSequences(lines1, lines2);
+                    sink += diff.diffs().length;
+                });
+            }
+        }
+    }
+
+    /** Time a commit of one changed file in a repository tracking N
+     *  files, 1000 to a directory, and report the bytes it stores. */
+    static void commit(int n) {
+        Command.init();
+        Objects stage = readStage(INDEX);
+        for (int i = 0; i < n; i += 1) {
+            String file = "d" + i / 1000 + "/f" + i + ".txt";
+            String sha1 = Blob.write(("file " + i + "\n").getBytes());
+            stage.index.put(file, new Index(sha1, file));
+        }
+        writeStage(INDEX, stage);
+        long start = System.nanoTime();
+        Command.commit("all files");
+        report("commit.all", 1e9 / (System.nanoTime() - start), "ops/s");
+
+        Random random = new Random(SEED);
+        long stored = storedBytes();
+        measure("commit.one", 1, () -> {
+            Objects changes = readStage(INDEX);
+            String file = "d0/f" + random.nextInt(Math.min(n, 1000))
+                + ".txt";
+            String sha1 = Blob.write(("change " + random.nextLong())
+                                     .getBytes());
+            changes.index.put(file, new Index(sha1, file));
+            writeStage(INDEX, changes);
+            Command.commit("one file");
+        });
+        report("commit.one.stored",
+               (storedBytes() - stored) / (WARMUP + ITERATIONS), "bytes");
+    }
+
+    /** Time adding N new files with one add, and adding N / 10 of them
+     *  again after changing them, one add per file as before batching. */
+    static void add(int n) {
+        Command.init();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String file = "d" + i / 1000 + "/f" + i + ".txt";
+            join(file).getParentFile().mkdirs();
+            writeContents(join(file), "file " + i + "\n");
+            files.add(file);
+        }
+        long start = System.nanoTime();
+        Command.add(files);
+        report("add.batch", n / ((System.nanoTime() - start) / 1e9),
+               "files/s");
+
+        List<String> some = files.subList(0, n / 10);
+        for (String file : some) {
+            writeContents(join(file), "changed " + file + "\n");
+        }
+        start = System.nanoTime();
+        for (String file : some) {
+            Command.add(List.of(file));
+        }
+        report("add.each", some.size() / ((System.nanoTime() - start) / 1e9),
+               "files/s");
+    }
+
+    /** Time commits that each change one of 100 files, N per iteration,
+     *  at each durability level. */
+    static void durability(int n) {
+        Command.init();
+        Random random = new Random(SEED);
+        for (Journal.Durability level : Journal.Durability.values()) {
+            Journal.durability = level;
+            measure("durability." + level.name().toLowerCase(), n, () -> {
+                for (int i = 0; i < n; i += 1) {
+                    Objects stage = readStage(INDEX);
+                    String file = "f" + random.nextInt(100) + ".txt";
+                    String sha1 = Blob.write(("change " + random.nextLong())
+                                             .getBytes());
+                    stage.index.put(file, new Index(sha1, file));
+                    writeStage(INDEX, stage);
+                    Command.commit("one file");
+                }
+            });
+        }
+    }
+
+    /** Time reading the files of the head commit of a repository
+     *  tracking N files, 1000 to a directory, as a command does several
+     *  times: decoding the commit and its trees each time, and through
+     *  ObjectCache. */
+    static void cache(int n) {
+        Command.init();
+        Objects stage = readStage(INDEX);
+        for (int i = 0; i < n; i += 1) {
+            String file = "d" + i / 1000 + "/f" + i + ".txt";
+            String sha1 = Blob.write(("file " + i + "\n").getBytes());
+            stage.index.put(file, new Index(sha1, file));
+        }
+        writeStage(INDEX, stage);
+        Command.commit("all files");
+        String head = getCurrHead();
+
+        measure("cache.off", 10, () -> {
+            for (int i = 0; i < 10; i += 1) {
+                ObjectCache.clear();
+                sink += getObjectsHash(head).files().size();
+            }
+        });
+        measure("cache.on", 10, () -> {
+            for (int i = 0; i < 10; i += 1) {
+                sink += getObjectsHash(head).files().size();
+            }
+        });
+        if (format == Format.TEXT) {
+            System.out.println(ObjectCache.stats());
+        }
+    }
+
+    /** Time status and log in a repository of N committed files, as
+     *  separate JVMs, through the daemon from separate client JVMs, and
+     *  through the daemon from this JVM, as a client that is not Java
+     *  would, and report the latency of each command. */
+    static void daemon(int n) {
+        Command.init();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String file = "d" + i / 1000 + "/f" + i + ".txt";
+            join(file).getParentFile().mkdirs();
+            writeContents(join(file), "file " + i + "\n");
+            files.add(file);
+        }
+        Command.add(files);
+        Command.commit("all files");
+
+        try {
+            Process daemon = java("gitlet.Daemon").start();
+            while (!Daemon.SOCKET.exists()) {
+                Thread.sleep(10);
+            }
+            OutputStream discard = OutputStream.nullOutputStream();
+            for (String command : new String[] { "status", "log" }) {
+                latency("daemon." + command + ".cold", () ->
+                    run(java("gitlet.Main", command)));
+                latency("daemon." + command + ".client", () ->
+                    run(java("gitlet.Client", command)));
+                latency("daemon." + command + ".socket", () ->
+                    Client.forward(new String[] { command }, discard));
+            }
+            Daemon.SOCKET.delete();
+            daemon.waitFor();
+        } catch (IOException | InterruptedException excp) {
+            throw error("Cannot run daemon benchmark: %s", excp);
+        }
+    }
+
+    /** Time BODY, one command, as measure does, and report its mean
+     *  latency as NAME. */
+    static void latency(String name, Runnable body) {
+        for (int i = 0; i < WARMUP; i += 1) {
+            body.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i += 1) {
+            body.run();
+        }
+        report(name, (System.nanoTime() - start) / 1e6 / ITERATIONS,
+               "ms/op");
+    }
+
+    /** Return a builder of a process that runs the main class MAIN of
+     *  gitlet with ARGS in this directory, its output discarded. */
+    private static ProcessBuilder java(String main, String... args) {
+        List<String> command = new ArrayList<>(List.of(
+            Path.of(System.getProperty("java.home"), "bin", "java")
+            .toString(), "-cp", System.getProperty("java.class.path"),
+            main));
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.DISCARD);
+    }
+
+    /** Run the process of BUILDER to completion. */
+    private static void run(ProcessBuilder builder) {
+        try {
+            builder.start().waitFor();
+        } catch (IOException | InterruptedException excp) {
+            throw error("Cannot run %s: %s", builder.command(), excp);
+        }
+    }
+
+    /** Time finding commits by message among N commits, by reading
+     *  every commit as find did before the message index, and through
+     *  the index, and time rebuilding and loading the index. */
+    static void find(int n) {
+        Command.init();
+        Objects commit = copyObjectsHash(getCurrHead());
+        for (int i = 0; i < n; i += 1) {
+            commit.makeCommit("change " + i + " of the benchmark");
+            writeObject(commit);
+        }
+        String target = "change " + n / 2 + " of the benchmark";
+        CommitGraph graph = CommitGraph.get();
+
+        measure("find.scan", 1, () -> {
+            ObjectCache.clear();
+            for (int k = 0; k < graph.size(); k += 1) {
+                if (getObjectsHash(graph.id(k)).getMsg().equals(target)) {
+                    sink += 1;
+                }
+            }
+        });
+        measure("find.exact", 1000, () -> {
+            for (int i = 0; i < 1000; i += 1) {
+                sink += MessageIndex.get().find(target,
+                    MessageIndex.Match.EXACT).size();
+            }
+        });
+        measure("find.substring", 10, () -> {
+            for (int i = 0; i < 10; i += 1) {
+                sink += MessageIndex.get().find(n / 2 + " of",
+                    MessageIndex.Match.SUBSTRING).size();
+            }
+        });
+        measure("find.load", 1, () -> {
+            MessageIndex.reset(false);
+            sink += MessageIndex.get().size();
+        });
+        measure("find.rebuild", 1, () -> {
+            MessageIndex.reset(true);
+            sink += MessageIndex.get().size();
+        });
+    }
+
+    /** Time resolving 1000 abbreviated ids of a history of N commits by
+     *  scanning every id, and through the sorted ids of the commit
+     *  graph. */
+    static void resolve(int n) {
+        Command.init();
+        Objects commit = copyObjectsHash(getCurrHead());
+        for (int i = 0; i < n; i += 1) {
+            commit.makeCommit("commit " + i);
+            writeObject(commit);
+        }
+        CommitGraph graph = CommitGraph.get();
+        Random random = new Random(SEED);
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 1) {
+            prefixes.add(graph.id(random.nextInt(graph.size()))
+                         .substring(0, 8));
+        }
+
+        measure("resolve.scan", 1000, () -> {
+            for (String prefix : prefixes) {
+                for (int k = 0; k < graph.size(); k += 1) {
+                    if (graph.id(k).startsWith(prefix)) {
+                        sink += k;
+                    }
+                }
+            }
+        });
+        measure("resolve.sorted", 1000, () -> {
+            for (String prefix : prefixes) {
+                sink += graph.resolve(prefix).length();
+            }
+        });
+    }
+
+    /** Time log over a history of N commits, in full and limited to its
+     *  first commit, from a cold object cache.  The full log is also how
+     *  long log took to print anything before it streamed. */
+    static void log(int n) {
+        Command.init();
+        Objects commit = copyObjectsHash(getCurrHead());
+        for (int i = 0; i < n; i += 1) {
+            commit.makeCommit("commit " + i);
+            writeObject(commit);
+        }
+        LogRange first = new LogRange(1, Long.MIN_VALUE, Long.MAX_VALUE);
+        measure("log.full", 1, () -> quietly(() -> {
+            ObjectCache.clear();
+            Command.log(LogRange.ALL);
+        }));
+        measure("log.first", 1000, () -> quietly(() -> {
+            for (int i = 0; i < 1000; i += 1) {
+                ObjectCache.clear();
+                Command.log(first);
+            }
+        }));
+    }
+
+    /** Run BODY with the standard output discarded. */
+    private static void quietly(Runnable body) {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            body.run();
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    /** Add ten versions of a file of N KiB of random bytes, each made
+     *  from the last by a few small edits, and report the throughput of
+     *  add and the bytes stored, with the file stored whole and in
+     *  chunks. */
+    static void chunk(int n) {
+        Command.init();
+        Random random = new Random(SEED);
+        byte[] first = new byte[n << 10];
+        random.nextBytes(first);
+        for (boolean chunked : new boolean[] { false, true }) {
+            String name = chunked ? "chunked" : "whole";
+            Blob.chunkThreshold = chunked ? 1 << 20 : Long.MAX_VALUE;
+            File file = join(name + ".bin");
+            byte[] contents = first;
+            long stored = storedBytes(), added = 0, nanos = 0;
+            for (int v = 0; v < 10; v += 1) {
+                contents = edit(contents, random, chunked);
+                writeContents(file, contents);
+                long start = System.nanoTime();
+                Command.add(List.of(file.getName()));
+                nanos += System.nanoTime() - start;
+                added += contents.length;
+            }
+            report("chunk.add." + name, added / 1e6 / (nanos / 1e9), "MB/s");
+            report("chunk.added." + name, added, "bytes");
+            report("chunk.stored." + name, storedBytes() - stored, "bytes");
+        }
+    }
+
+    /** Return CONTENTS after three small random edits, chosen by
+     *  RANDOM: an overwrite, an insertion and a deletion.  MARK makes the
+     *  result differ between the two files of chunk. */
+    private static byte[] edit(byte[] contents, Random random,
+                               boolean mark) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int overwrite = random.nextInt(contents.length - 100);
+        int insert = random.nextInt(contents.length);
+        int delete = random.nextInt(contents.length - 100);
+        for (int k = 0; k < contents.length; k += 1) {
+            if (k == insert) {
+                result.writeBytes(("inserted " + random.nextLong())
+                                  .getBytes());
+            }
+            if (k >= delete && k < delete + 100) {
+                continue;
+            }
+            result.write(k >= overwrite && k < overwrite + 100
+                         ? contents[k] + 1 : contents[k]);
+        }
+        result.write(mark ? 1 : 0);
+        return result.toByteArray();
+    }
+
+    /** Time switching between two branches of a repository of N files,
+     *  1000 to a directory, that differ in two files, and rewriting
+     *  every file of a commit as checkout did before. */
+    static void checkout(int n) {
+        Command.init();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String file = "d" + i / 1000 + "/f" + i + ".txt";
+            join(file).getParentFile().mkdirs();
+            writeContents(join(file), "file " + i + "\n");
+            files.add(file);
+        }
+        Command.add(files);
+        Command.commit("all files");
+        Command.branch("other");
+        for (String file : List.of(files.get(0), files.get(n - 1))) {
+            writeContents(join(file), "changed " + file + "\n");
+        }
+        Command.add(List.of(files.get(0), files.get(n - 1)));
+        Command.commit("two files");
+
+        measure("checkout.switch", 2, () -> {
+            Command.checkoutBranch("other");
+            Command.checkoutBranch("master");
+        });
+        Objects head = getCurrHeadCommit();
+        measure("checkout.rewrite", 1, () -> {
+            for (Map.Entry<String, Index> entry : head.files().entrySet()) {
+                updateRepoFile(join(entry.getKey()),
+                               entry.getValue().getSha1());
+            }
+        });
+    }
+
+    /** Build a history of about N objects, in commits that each replace
+     *  the 1000 files of the last with 1000 new ones in a directory of
+     *  their own, packed as it grows, plus N / 100 unreachable loose
+     *  blobs.  Then report the time and memory of marking the reachable
+     *  objects, and the time of a whole gc. */
+    static void gc(int n) {
+        Command.init();
+        Map<String, Index> last = Map.of();
+        for (int c = 0; c < n / 1000; c += 1) {
+            Objects stage = readStage(INDEX);
+            Objects removeStage = readStage(INDEX_REMOVE);
+            removeStage.index.putAll(last);
+            for (int i = 0; i < 1000; i += 1) {
+                String file = "d" + c + "/f" + i + ".txt";
+                String sha1 = Blob.write(("file " + c + " " + i + "\n")
+                                         .getBytes());
+                stage.index.put(file, new Index(sha1, file));
+            }
+            writeStage(INDEX, stage);
+            writeStage(INDEX_REMOVE, removeStage);
+            last = new HashMap<>(stage.index);
+            Command.commit("directory " + c);
+            if (c % 50 == 49) {
+                Pack.repack();
+            }
+        }
+        for (int i = 0; i < n / 100; i += 1) {
+            Blob.write(("garbage " + i).getBytes());
+        }
+        ObjectCache.clear();
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        Reachability objects = new Reachability();
+        objects.markCommit(getCurrHead());
+        long nanos = System.nanoTime() - start;
+        System.gc();
+        long used = runtime.totalMemory() - runtime.freeMemory() - before;
+        report("gc.objects", objects.size(), "objects");
+        report("gc.objects.marked", objects.markedCount(), "objects");
+        report("gc.mark", nanos / 1e6, "ms");
+        report("gc.mark.memory", objects.footprint(), "bytes");
+        report("gc.mark.heap", used, "bytes");
+
+        start = System.nanoTime();
+        int removed = Files.collectGarbage(0);
+        report("gc.total", (System.nanoTime() - start) / 1e6, "ms");
+        report("gc.removed", removed, "objects");
+    }
+
+    /** Time asking whether the first of a packed history of N commits,
+     *  each changing one of 100 files, is an ancestor of the last, and
+     *  marking the objects the last reaches as gc does, with and without
+     *  reachability bitmaps, and report the time and size of writing
+     *  the bitmaps from scratch. */
+    static void bitmaps(int n) {
+        Command.init();
+        Random random = new Random(SEED);
+        for (int i = 0; i < n; i += 1) {
+            Objects stage = readStage(INDEX);
+            String file = "f" + random.nextInt(100) + ".txt";
+            String sha1 = Blob.write(("change " + i + "\n").getBytes());
+            stage.index.put(file, new Index(sha1, file));
+            writeStage(INDEX, stage);
+            Command.commit("change " + i);
+        }
+        String head = getCurrHead();
+        String first = CommitGraph.get().id(1);
+        Pack.repack();
+        Bitmaps.FILE.delete();
+        Pack.reset();
+        long start = System.nanoTime();
+        Bitmaps.write(Bitmaps.get());
+        report("bitmaps.write", (System.nanoTime() - start) / 1e6, "ms");
+        report("bitmaps.size", Bitmaps.FILE.length(), "bytes");
+
+        for (String mode : new String[] { "on", "off" }) {
+            if (mode.equals("off")) {
+                Bitmaps.FILE.delete();
+                Pack.reset();
+            }
+            measure("bitmaps.ancestor." + mode, 100, () -> {
+                for (int i = 0; i < 100; i += 1) {
+                    sink += CommitGraph.get().isAncestor(first, head) ? 1 : 0;
+                }
+            });
+            measure("bitmaps.mark." + mode, 1, () -> {
+                ObjectCache.clear();
+                Reachability objects = new Reachability();
+                objects.markCommit(head);
+                sink += objects.markedCount();
+            });
+        }
+    }
+
+    /** Run the benchmarks of each of the SCALES, each in a JVM of its
+     *  own in the directory scale-NAME, and report their results. */
+    static void suite(List<String> scales) {
+        for (String name : scales) {
+            File dir = join("scale-" + name);
+            if (join(dir, ".gitlet").exists()) {
+                System.out.println("Run benchmarks from an empty directory.");
+                return;
+            }
+            dir.mkdirs();
+            ProcessBuilder builder = java("gitlet.Benchmark", "--format=csv",
+                                          "scale", name)
+                .directory(dir)
+                .redirectOutput(ProcessBuilder.Redirect.PIPE)
+                .redirectError(ProcessBuilder.Redirect.INHERIT);
+            try {
+                Process child = builder.start();
+                try (BufferedReader in = new BufferedReader(
+                         new InputStreamReader(child.getInputStream()))) {
+                    for (String line = in.readLine(); line != null;
+                         line = in.readLine()) {
+                        String[] fields = line.split(",", -1);
+                        if (fields.length == 5 && fields[0].equals("suite")) {
+                            scale = fields[1];
+                            report(fields[2], fields[3], fields[4]);
+                        }
+                    }
+                }
+                child.waitFor();
+            } catch (IOException | InterruptedException excp) {
+                throw error("Cannot run scale %s: %s", name, excp);
+            }
+        }
+    }
+
+    /** Generate the SyntheticRepo of the scale NAME in this directory,
+     *  and time on it: adding edited files, committing one change, status
+     *  with nothing changed, log of master, switching to a branch and
+     *  back, finding a commit by exact message and by a substring, and
+     *  diffing the first and last versions of up to 100 files. */
+    static void scale(String name) {
+        benchmark = "suite";
+        scale = name;
+        int[] params = SCALES.get(name);
+        SyntheticRepo repo = new SyntheticRepo(params[0], params[1],
+                                               params[2], params[3], SEED);
+        report("files", repo.files, "files");
+        report("file.size", repo.fileSize, "bytes");
+        report("depth", repo.depth, "commits");
+        report("branches", repo.branches, "branches");
+        long start = System.nanoTime();
+        quietly(repo::generate);
+        report("generate", (System.nanoTime() - start) / 1e6, "ms");
+        report("stored", storedBytes(), "bytes");
+        String initial = CommitGraph.get().id(1);
+
+        int k = repo.changesPerCommit();
+        Random random = new Random(SEED);
+        measure("add", k, () -> {
+            List<String> changed = new ArrayList<>();
+            for (int i = 0; i < k; i += 1) {
+                String file = SyntheticRepo.file(random.nextInt(repo.files));
+                writeContents(join(file),
+                              repo.edit(readContentsAsString(join(file))));
+                changed.add(file);
+            }
+            Command.add(changed);
+        });
+        quietly(() -> Command.commit("added files"));
+        measure("commit", 1, () -> repo.change("benchmark change"));
+        measure("status", 1, () -> quietly(Command::status));
+        measure("log", 1, () -> quietly(() -> {
+            ObjectCache.clear();
+            Command.log(LogRange.ALL);
+        }));
+        if (repo.branches > 0) {
+            measure("checkout", 2, () -> {
+                Command.checkoutBranch(SyntheticRepo.branch(0));
+                Command.checkoutBranch(SyntheticRepo.MASTER);
+            });
+        }
+        String message = SyntheticRepo.message(SyntheticRepo.MASTER,
+                                               repo.depth / 2);
+        measure("find.exact", 100, () -> quietly(() -> {
+            for (int i = 0; i < 100; i += 1) {
+                Command.find(message, MessageIndex.Match.EXACT);
+            }
+        }));
+        measure("find.substring", 10, () -> quietly(() -> {
+            for (int i = 0; i < 10; i += 1) {
+                Command.find(" on branch0", MessageIndex.Match.SUBSTRING);
+            }
+        }));
+
+        Objects first = getObjectsHash(initial), last = getCurrHeadCommit();
+        List<List<String>> pairs = new ArrayList<>();
+        for (int i = 0; i < Math.min(repo.files, 100); i += 1) {
+            String file = SyntheticRepo.file(i);
+            for (Objects commit : new Objects[] { first, last }) {
+                pairs.add(List.of(new String(
+                    Blob.read(commit.getFile(file).getSha1()),
+                    StandardCharsets.UTF_8).split("\n")));
+            }
+        }
+        Diff diff = new Diff();
+        measure("diff", pairs.size() / 2, () -> {
+            for (int i = 0; i < pairs.size(); i += 2) {
+                diff.setSequences(pairs.get(i), pairs.get(i + 1));
+                sink += diff.diffs().length;
+            }
+        });
+    }
+
+    /** Return the total size of the files in the object store. */
+    private static long storedBytes() {
+        try (Stream<Path> files = java.nio.file.Files.walk(OBJECTS.toPath())) {
+            return files.filter(java.nio.file.Files::isRegularFile)
+                .mapToLong(path -> path.toFile().length()).sum();
+        } catch (IOException excp) {
+            throw error("Cannot list objects.");
+        }
+    }
+
+    /** The parameters of each scale of the suite: files, file size,
+     *  history depth and branches, as SyntheticRepo takes them.  The
+     *  large scale takes about two minutes to generate and 2 GB of
+     *  disk. */
+    static final Map<String, int[]> SCALES = new LinkedHashMap<>();
+
+    static {
+        SCALES.put("small", new int[] { 100, 1 << 10, 20, 2 });
+        SCALES.put("medium", new int[] { 1000, 4 << 10, 100, 4 });
+        SCALES.put("large", new int[] { 10000, 16 << 10, 400, 8 });
+    }
+
+    /** Scales run by the suite when none are named. */
+    static final List<String> DEFAULT_SCALES = List.of("small", "medium");
+
+    /** First line of CSV output. */
+    static final String CSV_HEADER = "benchmark,scale,metric,value,unit";
+
+    /** Default size of a benchmark. */
+    private static final int SIZE = 10000;
+
+    /** Untimed and timed runs of each benchmark. */
+    private static final int WARMUP = 2, ITERATIONS = 5;
+
+    /** Seed for the benchmarks' random choices, for reproducibility. */
+    private static final long SEED = 61;
+
+    /** Accumulates results, so that the work is not optimized away. */
+    private static long sink;
+
+    /** Format of the output. */
+    private static Format format = Format.TEXT;
+
+    /** Name and scale of the benchmark being run, for the records of
+     *  its results. */
+    private static String benchmark, scale;
+
+    /** Records of the results so far, for JSON output. */
+    private static final List<String> RECORDS = new ArrayList<>();
+}
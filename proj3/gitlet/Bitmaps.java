@@ -0,0 +1,362 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+
+/** Reachability bitmaps of selected commits: for each, the set of packed
+ *  objects that it reaches, so that whether a commit reaches an object,
+ *  or which objects one reaches, is a lookup in a bitmap rather than a
+ *  walk through history.  Bit B stands for the Bth object of the pack
+ *  in the order written, which is oldest first, so that the objects of
+ *  old history are runs of set bits and the bits of an object never
+ *  change as the pack grows.  Bitmaps are compressed as EWAH: a MARKER
+ *  word holds a RUN BIT (bit 0), a RUN LENGTH (bits 1-32) and a LITERAL
+ *  COUNT (bits 33-63), and stands for RUN LENGTH words all of whose bits
+ *  are RUN BIT, followed by the next LITERAL COUNT words as they are.
+ *  The file, written at each repack, is
+ *      MAGIC (4 bytes), VERSION (4 bytes), PACK LENGTH (8 bytes),
+ *      N (4 bytes), COUNT (4 bytes),
+ *      ORDER (N 4-byte pack index positions, by bit),
+ *      RANK (N 4-byte bits, by pack index position),
+ *      ENTRY...
+ *  with COUNT ENTRYs of
+ *      SHA1 (20 bytes), WORDS (4 bytes), EWAH (WORDS 8-byte words).
+ *  The commits with bitmaps are the branch heads and every SPACINGth
+ *  commit of the commit graph.  The chunks of large files are left out,
+ *  since finding them means reading every packed blob; gc never needs
+ *  them, as it removes only loose objects.
+ *  @author Darren Wang
+ */
+class Bitmaps {
+
+    /** The bitmaps of the objects in PACKED, a pack of LENGTH bytes,
+     *  with the numbering TABLES (ORDER then RANK, or null to be computed
+     *  when needed) and the compressed bitmaps ENTRIES, by commit. */
+    private Bitmaps(PackIndex packed, long length, ByteBuffer tables,
+                    HashMap<String, long[]> entries) {
+        this.packed = packed;
+        this.length = length;
+        this.tables = tables;
+        this.entries = entries;
+    }
+
+    /** Return the bitmaps of the current pack, reading them on first
+     *  use.  If the file is missing or was written for another pack,
+     *  there are no bitmaps. */
+    static Bitmaps get() {
+        if (current == null) {
+            current = read();
+        }
+        return current;
+    }
+
+    /** Forget the bitmaps read by this process, as after a repack. */
+    static void reset() {
+        current = null;
+    }
+
+    /** Forget the bitmaps read by this process if another process has
+     *  replaced their file since, as its fingerprint shows. */
+    static void refresh() {
+        if (current != null
+                && !java.util.Objects.equals(Files.fingerprint(FILE),
+                                             current.fingerprint)) {
+            current = null;
+        }
+    }
+
+    /** Return the number of packed objects, which are numbered from 0. */
+    int size() {
+        return packed.size();
+    }
+
+    /** Return the index of the packed objects. */
+    PackIndex index() {
+        return packed;
+    }
+
+    /** Return the bit of the object at pack index position K. */
+    int rank(int k) {
+        return numbering().getInt(4 * (size() + k));
+    }
+
+    /** Return the pack index position of the object of bit B. */
+    int position(int b) {
+        return numbering().getInt(4 * b);
+    }
+
+    /** Return the bit of object SHA1, or -1 if it is not packed or there
+     *  are no bitmaps, and so none will reach it. */
+    int bit(String sha1) {
+        if (entries.isEmpty()) {
+            return -1;
+        }
+        int k = packed.position(sha1);
+        return k < 0 ? -1 : rank(k);
+    }
+
+    /** Return true iff commit ID has a bitmap. */
+    boolean has(String id) {
+        return entries.containsKey(id);
+    }
+
+    /** Return true iff commit ID, which has a bitmap, reaches the object
+     *  of bit B. */
+    boolean reaches(String id, int b) {
+        return get(entries.get(id), b);
+    }
+
+    /** Set in MARKS, over the numbers of the objects, the bits of the
+     *  objects that commit ID, which has a bitmap, reaches. */
+    void addTo(String id, BitSet marks) {
+        marks.or(BitSet.valueOf(decompress(entries.get(id),
+                                           (size() + 63) / 64)));
+    }
+
+    /** Write the bitmaps of the current pack, which has grown from (or
+     *  is) the pack of PREVIOUS, reusing those of its bitmaps that are
+     *  still wanted.  The commits are taken in the order of the commit
+     *  graph, where every commit follows its parents, so each new bitmap
+     *  is built from the nearest bitmaps below it, and the walk for it
+     *  covers only the history since them.  A commit whose history is
+     *  not all packed gets no bitmap. */
+    static void write(Bitmaps previous) {
+        reset();
+        Bitmaps next = new Bitmaps(Pack.index(), Pack.PACK.length(), null,
+                                   new HashMap<>());
+        if (next.size() == 0) {
+            return;
+        }
+        next.numbering();
+        Reachability walk = new Reachability(next);
+        for (String id : selected()) {
+            long[] old = previous.entries.get(id);
+            if (old != null) {
+                next.entries.put(id, old);
+                continue;
+            }
+            walk.clear();
+            walk.markCommit(id);
+            if (walk.position(id) >= 0 && !walk.marksLoose()) {
+                next.entries.put(id, compress(walk.markedWords()));
+            }
+        }
+        next.save();
+        next.fingerprint = Files.fingerprint(FILE);
+        current = next;
+    }
+
+    /** Return the commits that should have bitmaps, in the order of the
+     *  commit graph. */
+    private static List<String> selected() {
+        CommitGraph graph = CommitGraph.get();
+        TreeSet<Integer> chosen = new TreeSet<>();
+        for (int k = SPACING - 1; k < graph.size(); k += SPACING) {
+            chosen.add(k);
+        }
+        for (String branch : branchNames()) {
+            int k = graph.position(getHeadGeneral(branch));
+            if (k >= 0) {
+                chosen.add(k);
+            }
+        }
+        return chosen.stream().map(graph::id).toList();
+    }
+
+    /** Return the bitmaps stored in FILE, or none if it is missing or out
+     *  of date. */
+    private static Bitmaps read() {
+        String fingerprint = Files.fingerprint(FILE);
+        Bitmaps result = readFile();
+        result.fingerprint = fingerprint;
+        return result;
+    }
+
+    /** Return the bitmaps stored in FILE, as for read. */
+    private static Bitmaps readFile() {
+        PackIndex packed = Pack.index();
+        long length = Pack.PACK.length();
+        HashMap<String, long[]> entries = new HashMap<>();
+        if (!FILE.exists() || packed.size() == 0) {
+            return new Bitmaps(packed, length, null, entries);
+        }
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(FILE.toPath())) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                             channel.size());
+        } catch (IOException excp) {
+            throw error("Cannot read bitmaps: %s", excp.getMessage());
+        }
+        if (in.remaining() < HEADER || in.getInt() != MAGIC
+                || in.getInt() != VERSION || in.getLong() != length
+                || in.getInt() != packed.size()) {
+            return new Bitmaps(packed, length, null, entries);
+        }
+        int count = in.getInt();
+        ByteBuffer tables = in.slice(HEADER, 8 * packed.size());
+        in.position(HEADER + 8 * packed.size());
+        byte[] id = new byte[PackIndex.ID_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            in.get(id);
+            long[] words = new long[in.getInt()];
+            in.asLongBuffer().get(words);
+            in.position(in.position() + 8 * words.length);
+            entries.put(Codec.toHex(id), words);
+        }
+        return new Bitmaps(packed, length, tables, entries);
+    }
+
+    /** Write these bitmaps to FILE.  The new file replaces the old one by
+     *  a rename, so that processes that have the old one mapped are not
+     *  disturbed. */
+    private void save() {
+        long total = HEADER + 8L * size();
+        for (long[] words : entries.values()) {
+            total += PackIndex.ID_BYTES + 4 + 8L * words.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(MAGIC).putInt(VERSION).putLong(length).putInt(size())
+            .putInt(entries.size());
+        out.put(numbering().duplicate().rewind());
+        for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+            out.put(PackIndex.toBytes(entry.getKey()))
+                .putInt(entry.getValue().length);
+            out.asLongBuffer().put(entry.getValue());
+            out.position(out.position() + 8 * entry.getValue().length);
+        }
+        writeContents(FILE, out.array());
+    }
+
+    /** Return the ORDER and RANK tables, computing them from the pack
+     *  offsets if they were not read. */
+    private ByteBuffer numbering() {
+        if (tables == null) {
+            int n = size();
+            long[] offsets = new long[n];
+            for (int k = 0; k < n; k += 1) {
+                offsets[k] = packed.offsetAt(k);
+            }
+            long[] sorted = offsets.clone();
+            Arrays.sort(sorted);
+            tables = ByteBuffer.allocate(8 * n);
+            for (int k = 0; k < n; k += 1) {
+                int b = Arrays.binarySearch(sorted, offsets[k]);
+                tables.putInt(4 * b, k).putInt(4 * (n + k), b);
+            }
+        }
+        return tables;
+    }
+
+    /** Return the bitmap WORDS compressed. */
+    static long[] compress(long[] words) {
+        long[] out = new long[words.length + 1];
+        int n = 0;
+        for (int i = 0; i < words.length; ) {
+            long fill = words[i];
+            int run = 0;
+            while (i < words.length && isClean(words[i])
+                   && words[i] == fill) {
+                i += 1;
+                run += 1;
+            }
+            int start = i;
+            while (i < words.length && !isClean(words[i])) {
+                i += 1;
+            }
+            out[n] = (run > 0 && fill == -1 ? 1 : 0) | (long) run << 1
+                | (long) (i - start) << 33;
+            System.arraycopy(words, start, out, n + 1, i - start);
+            n += 1 + i - start;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Return the first SIZE words of the bitmap compressed as EWAH. */
+    static long[] decompress(long[] ewah, int size) {
+        long[] words = new long[size];
+        int w = 0;
+        for (int i = 0; i < ewah.length; ) {
+            long marker = ewah[i];
+            int run = (int) (marker >>> 1), literals = (int) (marker >>> 33);
+            if ((marker & 1) != 0) {
+                Arrays.fill(words, w, w + run, -1L);
+            }
+            w += run;
+            System.arraycopy(ewah, i + 1, words, w, literals);
+            w += literals;
+            i += 1 + literals;
+        }
+        return words;
+    }
+
+    /** Return bit B of the bitmap compressed as EWAH, reading only the
+     *  markers before it. */
+    static boolean get(long[] ewah, int b) {
+        int target = b >>> 6, w = 0;
+        for (int i = 0; i < ewah.length; ) {
+            long marker = ewah[i];
+            int run = (int) (marker >>> 1), literals = (int) (marker >>> 33);
+            if (target < w + run) {
+                return (marker & 1) != 0;
+            }
+            w += run;
+            if (target < w + literals) {
+                return (ewah[i + 1 + target - w] >>> (b & 63) & 1) != 0;
+            }
+            w += literals;
+            i += 1 + literals;
+        }
+        return false;
+    }
+
+    /** Return true iff WORD is all zeros or all ones. */
+    private static boolean isClean(long word) {
+        return word == 0 || word == -1;
+    }
+
+    /** The bitmap file. */
+    static final File FILE = join(Pack.PACK_DIR, "objects.bitmaps");
+
+    /** Distance, in commits of the commit graph, between the commits
+     *  given bitmaps apart from the branch heads. */
+    static final int SPACING = 100;
+
+    /** Identifies a bitmap file: "GBMP". */
+    private static final int MAGIC = 0x47424d50;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the ORDER table. */
+    private static final int HEADER = 24;
+
+    /** The bitmaps of this repository, once read. */
+    private static Bitmaps current;
+
+    /** The index of the packed objects. */
+    private final PackIndex packed;
+
+    /** Length of the pack whose objects are numbered. */
+    private final long length;
+
+    /** The ORDER and RANK tables, or null until computed. */
+    private ByteBuffer tables;
+
+    /** The compressed bitmap of each commit that has one. */
+    private final HashMap<String, long[]> entries;
+
+    /** The fingerprint of FILE when these bitmaps were read or written,
+     *  or null if it did not exist. */
+    private String fingerprint;
+}
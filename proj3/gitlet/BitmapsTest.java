@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of reachability bitmaps, against walks of the commit graph.
+ *  @author Darren Wang
+ */
+public class BitmapsTest {
+
+    /** Number of rounds of history made, and commits on a side branch in
+     *  each. */
+    static final int ROUNDS = 60, SIDE = 3;
+
+    /** Write CONTENTS to FILE, and add and commit it with a message
+     *  naming FILE and CONTENTS. */
+    static void commit(String file, String contents) {
+        Utils.writeContents(Utils.join(file), contents);
+        Main.main("add", file);
+        Main.main("commit", file + " " + contents);
+    }
+
+    /** In a new repository in the current directory, make history with
+     *  branches and merges, spanning more than Bitmaps.SPACING commits,
+     *  and repack it midway and at the end, leaving one branch unmerged.
+     *  Then check every pair of the N commits, and print
+     *      mismatches M commits N merges K bitmaps B
+     *  where M pairs disagree with the parents in the commit graph, K
+     *  commits are merges and B commits have bitmaps. */
+    public static void main(String... args) {
+        Main.main("init");
+        for (int r = 0; r < ROUNDS; r += 1) {
+            commit("m.txt", "round " + r);
+            if (r % 4 == 1) {
+                String branch = "b" + r;
+                Main.main("branch", branch);
+                Main.main("checkout", branch);
+                for (int s = 0; s < SIDE; s += 1) {
+                    commit(branch + ".txt", "side " + s);
+                }
+                Main.main("checkout", "master");
+                if (r < ROUNDS - 4) {
+                    commit("m.txt", "before merging " + branch);
+                    Main.main("merge", branch);
+                }
+            }
+            if (r == ROUNDS / 2) {
+                Main.main("repack");
+            }
+        }
+        Main.main("repack");
+
+        CommitGraph graph = CommitGraph.get();
+        Bitmaps bitmaps = Bitmaps.get();
+        int n = graph.size(), mismatches = 0, merges = 0, withBitmaps = 0;
+        for (int d = 0; d < n; d += 1) {
+            BitSet ancestors = ancestors(graph, d);
+            String descendant = graph.id(d);
+            merges += graph.parent2(d) >= 0 ? 1 : 0;
+            withBitmaps += bitmaps.has(descendant) ? 1 : 0;
+            for (int a = 0; a < n; a += 1) {
+                String ancestor = graph.id(a);
+                boolean expected = ancestors.get(a);
+                if (graph.isAncestor(ancestor, descendant) != expected
+                    || bitmaps.has(descendant)
+                       && bitmaps.reaches(descendant,
+                                          bitmaps.bit(ancestor))
+                          != expected) {
+                    mismatches += 1;
+                }
+            }
+        }
+        System.out.println("mismatches " + mismatches + " commits " + n
+                           + " merges " + merges + " bitmaps "
+                           + withBitmaps);
+    }
+
+    /** Return the positions of commit K of GRAPH and its ancestors,
+     *  found by walking all its parents. */
+    static BitSet ancestors(CommitGraph graph, int k) {
+        BitSet result = new BitSet();
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(k);
+        result.set(k);
+        while (!work.isEmpty()) {
+            int c = work.pop();
+            for (int p : new int[] { graph.parent1(c), graph.parent2(c) }) {
+                if (p >= 0 && !result.get(p)) {
+                    result.set(p);
+                    work.push(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The bitmaps of the branch heads and of every SPACINGth commit
+     *  reach exactly the ancestors of their commits, and isAncestor,
+     *  which stops at bitmaps, agrees with a full walk for every pair of
+     *  commits. */
+    @Test
+    public void ancestryTest() throws Exception {
+        File dir = UnitTest.tempDir();
+        String[] lines = UnitTest.run(dir, "gitlet.BitmapsTest").split("\n");
+        String[] result = lines[lines.length - 1].split(" ");
+        assertEquals("mismatches", result[0]);
+        assertEquals("0", result[1]);
+        assertTrue(Integer.parseInt(result[3]) > Bitmaps.SPACING);
+        assertTrue(Integer.parseInt(result[5]) >= ROUNDS / 4 - 1);
+        assertTrue(Integer.parseInt(result[7]) > ROUNDS / 4);
+    }
+}
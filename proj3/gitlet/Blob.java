@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** Blobs: the contents of files, kept as raw bytes behind a Codec blob
+ *  header.  The sha1 of a blob is that of its stored bytes, header
+ *  included, and depends only on the contents of the file.  Files are
+ *  hashed in one streaming pass, hashed again as they are copied into
+ *  the object store, so that a file changed in between is not stored
+ *  under the sha1 of its old contents, and copied out with
+ *  FileChannel.transferTo, so that no more than a buffer of any file is
+ *  ever held in memory.  Files of CHUNK_THRESHOLD bytes or
+ *  more are instead cut by Chunker into chunks, each stored as a blob
+ *  of its own, and the blob is a CHUNKED list of their sha1s; the
+ *  chunks that an edit leaves alone are shared with earlier versions.
+ *  A chunked blob is still stored under the sha1 of the whole contents,
+ *  header included, so that it does not matter how a blob is stored.
+ *  @author Darren Wang
+ */
+class Blob {
+
+    /** Return the sha1 of the blob holding the contents of FILE. */
+    static String hash(File file) {
+        MessageDigest md = digest();
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            md.update(Codec.blobHeader(in.size()));
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+        } catch (IOException excp) {
+            throw error("Cannot read %s: %s", file, excp.getMessage());
+        }
+        return Codec.toHex(md.digest());
+    }
+
+    /** Store the contents of FILE as the blob SHA1, as computed by hash,
+     *  unless that blob is already stored.  Like writeContents, this
+     *  writes a temporary file and renames it into place, but only if
+     *  what was copied still hashes to SHA1: if FILE was changed since
+     *  it was hashed, nothing is stored and the command fails. */
+    static void write(File file, String sha1) {
+        if (hasObject(sha1)) {
+            return;
+        }
+        File dest = getObjectsFile(sha1);
+        dest.getParentFile().mkdir();
+        if (file.length() >= chunkThreshold) {
+            writeChunked(file, sha1, dest);
+            return;
+        }
+        Path tmp = Journal.tempFile(dest);
+        try {
+            MessageDigest md = digest();
+            try (FileChannel in = FileChannel.open(file.toPath());
+                 FileChannel out = FileChannel.open(tmp, CREATE, WRITE,
+                                                    TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                buf.put(Codec.blobHeader(in.size()));
+                do {
+                    buf.flip();
+                    buf.mark();
+                    md.update(buf);
+                    buf.reset();
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                    buf.clear();
+                } while (in.read(buf) >= 0);
+                Journal.written(out);
+            }
+            checkHash(file, sha1, md);
+            Journal.replace(tmp, dest);
+        } catch (IOException excp) {
+            throw error("Cannot store %s: %s", file, excp.getMessage());
+        } finally {
+            tmp.toFile().delete();
+        }
+    }
+
+    /** Store the contents of FILE, whose blob is SHA1, in chunks, and
+     *  the list of them as DEST, checking SHA1 as write does.  Chunks
+     *  stored before a change is noticed are left to gc. */
+    private static void writeChunked(File file, String sha1, File dest) {
+        List<String> chunks = new ArrayList<>();
+        MessageDigest md = digest();
+        long length = 0;
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            md.update(Codec.blobHeader(in.size()));
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                md.update(chunk);
+                chunks.add(write(chunk));
+                length += chunk.length;
+            }
+        } catch (IOException excp) {
+            throw error("Cannot store %s: %s", file, excp.getMessage());
+        }
+        checkHash(file, sha1, md);
+        writeContents(dest, Codec.encodeChunked(length, chunks));
+    }
+
+    /** Fail unless MD, which has digested the blob of FILE as it was
+     *  stored, gives SHA1. */
+    private static void checkHash(File file, String sha1, MessageDigest md) {
+        if (!Codec.toHex(md.digest()).equals(sha1)) {
+            throw error("File %s changed while it was being added.", file);
+        }
+    }
+
+    /** Store CONTENTS as a blob, unless it is already stored, and return
+     *  its sha1. */
+    static String write(byte[] contents) {
+        byte[] header = Codec.blobHeader(contents.length);
+        String sha1 = sha1(header, contents);
+        if (!hasObject(sha1)) {
+            File dest = getObjectsFile(sha1);
+            dest.getParentFile().mkdir();
+            writeContents(dest, header, contents);
+        }
+        return sha1;
+    }
+
+    /** Write the contents of blob SHA1 to FILE.  Like writeContents,
+     *  this writes a temporary file and renames it into place, so that
+     *  FILE never holds part of its new contents. */
+    static void copyTo(String sha1, File file) {
+        File loose = getObjectsFile(sha1);
+        if (!loose.exists()) {
+            byte[] data = readRawObject(sha1);
+            if (data != null && Codec.tag(data) == Codec.CHUNKED) {
+                copyChunks(data, file);
+            } else {
+                writeContents(file, read(sha1));
+            }
+            return;
+        }
+        try (FileChannel in = FileChannel.open(loose.toPath())) {
+            ByteBuffer head = ByteBuffer.allocate(MAX_HEADER);
+            in.read(head, 0);
+            int start = Codec.blobHeaderLength(head.array());
+            if (Codec.tag(head.array()) == Codec.CHUNKED) {
+                copyChunks(readContents(loose), file);
+                return;
+            } else if (start < 0) {
+                writeContents(file, read(sha1));
+                return;
+            }
+            Path tmp = Journal.tempFile(file);
+            try {
+                try (FileChannel out = FileChannel.open(tmp, CREATE, WRITE,
+                                                        TRUNCATE_EXISTING)) {
+                    long size = in.size();
+                    for (long pos = start; pos < size; ) {
+                        pos += in.transferTo(pos, size - pos, out);
+                    }
+                    Journal.written(out);
+                }
+                Journal.replace(tmp, file);
+            } finally {
+                tmp.toFile().delete();
+            }
+        } catch (IOException excp) {
+            throw error("Cannot check out %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Write the contents of the chunked blob whose stored bytes are
+     *  DATA to FILE, one chunk at a time. */
+    private static void copyChunks(byte[] data, File file) {
+        Path tmp = Journal.tempFile(file);
+        try {
+            try (FileChannel out = FileChannel.open(tmp, CREATE, WRITE,
+                                                    TRUNCATE_EXISTING)) {
+                for (String chunk : Codec.decodeChunks(data)) {
+                    ByteBuffer buf = ByteBuffer.wrap(read(chunk));
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
+                }
+                Journal.written(out);
+            }
+            Journal.replace(tmp, file);
+        } catch (IOException excp) {
+            throw error("Cannot check out %s: %s", file, excp.getMessage());
+        } finally {
+            tmp.toFile().delete();
+        }
+    }
+
+    /** Return the contents of blob SHA1. */
+    static byte[] read(String sha1) {
+        byte[] data = readRawObject(sha1);
+        if (data == null) {
+            throw error("No blob %s.", sha1);
+        }
+        if (Codec.tag(data) == Codec.CHUNKED) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            for (String chunk : Codec.decodeChunks(data)) {
+                result.writeBytes(read(chunk));
+            }
+            return result.toByteArray();
+        }
+        int start = Codec.blobHeaderLength(data);
+        if (start < 0) {
+            return Codec.decode(data).getContent()
+                .getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] result = new byte[data.length - start];
+        System.arraycopy(data, start, result, 0, result.length);
+        return result;
+    }
+
+    /** Return a fresh SHA-1 digest. */
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                                               + "SHA-1");
+        }
+    }
+
+    /** Size from which files are stored in chunks.  Not final, so that
+     *  Benchmark can compare storing large files whole. */
+    static long chunkThreshold = 1 << 20;
+
+    /** Size of the buffer used for hashing. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Longest possible blob header. */
+    private static final int MAX_HEADER = 16;
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of checking out a branch, which rewrites only what differs.
+ *  @author Darren Wang
+ */
+public class CheckoutTest {
+
+    /** Number of files committed on master, of those changed and of those
+     *  removed on the other branch, and of files it adds. */
+    static final int FILES = 40, CHANGED = 5, REMOVED = 3, ADDED = 2;
+
+    /** Return the name of the Kth file committed on master. */
+    static String name(int k) {
+        return "f" + k + ".txt";
+    }
+
+    /** In a new repository in the current directory, commit FILES files
+     *  on master, and on a branch change CHANGED of them, remove the
+     *  next REMOVED and add ADDED new ones.  Back on master, change the
+     *  next file in the working tree only, then check out the branch on
+     *  four threads, and print
+     *      untouched U rewritten W deleted D restored R
+     *  where U files that the branch does not change keep their
+     *  fingerprints, W files have the branch's contents, D of the
+     *  removed files are gone and R is 1 iff the changed file has its
+     *  committed contents again. */
+    public static void main(String... args) {
+        Main.main("init");
+        for (int k = 0; k < FILES; k += 1) {
+            Utils.writeContents(Utils.join(name(k)), "file " + k);
+        }
+        Main.main("add", ".");
+        Main.main("commit", "Files");
+        Main.main("branch", "other");
+        Main.main("checkout", "other");
+        for (int k = 0; k < CHANGED; k += 1) {
+            Utils.writeContents(Utils.join(name(k)), "changed " + k);
+            Main.main("add", name(k));
+        }
+        for (int k = CHANGED; k < CHANGED + REMOVED; k += 1) {
+            Main.main("rm", name(k));
+        }
+        for (int k = 0; k < ADDED; k += 1) {
+            Utils.writeContents(Utils.join("new" + k + ".txt"), "new " + k);
+            Main.main("add", "new" + k + ".txt");
+        }
+        Main.main("commit", "Changes");
+        Main.main("checkout", "master");
+
+        int local = CHANGED + REMOVED;
+        Map<String, String> before = new HashMap<>();
+        for (int k = local + 1; k < FILES; k += 1) {
+            before.put(name(k), Files.fingerprint(Utils.join(name(k))));
+        }
+        Utils.writeContents(Utils.join(name(local)), "changed locally");
+        Main.main("--threads=4", "checkout", "other");
+
+        int untouched = 0, rewritten = 0, deleted = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            File file = Utils.join(entry.getKey());
+            if (entry.getValue().equals(Files.fingerprint(file))) {
+                untouched += 1;
+            }
+        }
+        for (int k = 0; k < CHANGED; k += 1) {
+            rewritten += contentsAre(name(k), "changed " + k) ? 1 : 0;
+        }
+        for (int k = 0; k < ADDED; k += 1) {
+            rewritten += contentsAre("new" + k + ".txt", "new " + k) ? 1 : 0;
+        }
+        for (int k = CHANGED; k < local; k += 1) {
+            deleted += Utils.join(name(k)).exists() ? 0 : 1;
+        }
+        System.out.println("untouched " + untouched + " rewritten "
+                           + rewritten + " deleted " + deleted
+                           + " restored "
+                           + (contentsAre(name(local), "file " + local)
+                              ? 1 : 0));
+    }
+
+    /** Return true iff the working file NAME exists and holds
+     *  CONTENTS. */
+    static boolean contentsAre(String name, String contents) {
+        File file = Utils.join(name);
+        return file.isFile() && Utils.readContentsAsString(file)
+            .equals(contents);
+    }
+
+    /** Checking out a branch on several threads leaves the files that it
+     *  does not change as they were, with the same size, time and inode,
+     *  writes those it changes or adds, deletes those it lacks, and
+     *  restores a tracked file changed in the working tree. */
+    @Test
+    public void switchBranchesTest() throws Exception {
+        File dir = UnitTest.tempDir();
+        String[] lines = UnitTest.run(dir, "gitlet.CheckoutTest").split("\n");
+        assertEquals("untouched " + (FILES - CHANGED - REMOVED - 1)
+                     + " rewritten " + (CHANGED + ADDED)
+                     + " deleted " + REMOVED + " restored 1",
+                     lines[lines.length - 1]);
+    }
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Splits a stream into content-defined chunks, so that an edit to a
+ *  large file changes only the chunks around it and the rest are shared
+ *  with its earlier versions.  This is FastCDC: a gear hash rolls over
+ *  the bytes, shifting left one bit and adding a random number for each
+ *  byte, so that its top bits depend only on the last few dozen bytes,
+ *  and a chunk ends where those top bits are all zero.  No chunk ends
+ *  before MIN_CHUNK bytes or goes past MAX_CHUNK.  The test takes more
+ *  bits before AVERAGE_CHUNK bytes and fewer after it, which keeps
+ *  chunk sizes close to AVERAGE_CHUNK.  The random numbers come from a
+ *  fixed seed, so every repository cuts the same contents the same way.
+ *  @author Darren Wang
+ */
+class Chunker {
+
+    /** A chunker of the contents of IN. */
+    Chunker(ReadableByteChannel in) {
+        this.in = in;
+    }
+
+    /** Return the next chunk, or null at the end of the input. */
+    byte[] next() throws IOException {
+        if (end - start < MAX_CHUNK && !eof) {
+            fill();
+        }
+        if (start == end) {
+            return null;
+        }
+        int n = cut(buffer, start, end);
+        byte[] chunk = Arrays.copyOfRange(buffer, start, start + n);
+        start += n;
+        return chunk;
+    }
+
+    /** Return the length of the chunk at the start of BUF[START..END),
+     *  which is all of it if it ends the input and is no longer than
+     *  MAX_CHUNK. */
+    static int cut(byte[] buf, int start, int end) {
+        int n = end - start;
+        if (n <= MIN_CHUNK) {
+            return n;
+        }
+        int normal = Math.min(n, AVERAGE_CHUNK);
+        int limit = Math.min(n, MAX_CHUNK);
+        long hash = 0;
+        int i;
+        for (i = MIN_CHUNK; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[buf[start + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i += 1) {
+            hash = (hash << 1) + GEAR[buf[start + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /** Move the unread bytes to the front of the buffer and read until it
+     *  is full or the input ends. */
+    private void fill() throws IOException {
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+        ByteBuffer buf = ByteBuffer.wrap(buffer, end, buffer.length - end);
+        while (buf.hasRemaining()) {
+            if (in.read(buf) < 0) {
+                eof = true;
+                break;
+            }
+        }
+        end = buf.position();
+    }
+
+    /** Smallest, usual and largest sizes of a chunk. */
+    static final int MIN_CHUNK = 16 << 10, AVERAGE_CHUNK = 64 << 10,
+        MAX_CHUNK = 256 << 10;
+
+    /** Bits of the hash that must be zero to end a chunk before and after
+     *  AVERAGE_CHUNK bytes: two more and two fewer than the log of
+     *  AVERAGE_CHUNK. */
+    private static final long MASK_SMALL = -1L << (64 - 18),
+        MASK_LARGE = -1L << (64 - 14);
+
+    /** The random number added to the hash for each byte value. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x67656172L);
+        for (int b = 0; b < GEAR.length; b += 1) {
+            GEAR[b] = random.nextLong();
+        }
+    }
+
+    /** The input. */
+    private final ReadableByteChannel in;
+
+    /** Holds BUFFER[START..END), the input read but not yet chunked. */
+    private final byte[] buffer = new byte[2 * MAX_CHUNK];
+
+    /** Bounds of the unchunked input in BUFFER. */
+    private int start, end;
+
+    /** True once the input is exhausted. */
+    private boolean eof;
+}
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of content-defined chunking.
+ *  @author Darren Wang
+ */
+public class ChunkerTest {
+
+    /** Return the chunks of DATA, read from IN, checking that they make
+     *  up DATA and have allowed sizes. */
+    static List<byte[]> chunks(byte[] data, ReadableByteChannel in)
+        throws IOException {
+        List<byte[]> result = new ArrayList<>();
+        Chunker chunker = new Chunker(in);
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            result.add(chunk);
+            all.writeBytes(chunk);
+        }
+        assertArrayEquals(data, all.toByteArray());
+        for (int k = 0; k < result.size(); k += 1) {
+            int n = result.get(k).length;
+            assertTrue(n <= Chunker.MAX_CHUNK);
+            assertTrue(n >= Chunker.MIN_CHUNK || k == result.size() - 1);
+        }
+        return result;
+    }
+
+    /** Return the chunks of DATA. */
+    static List<byte[]> chunks(byte[] data) throws IOException {
+        return chunks(data, Channels.newChannel(
+            new ByteArrayInputStream(data)));
+    }
+
+    /** Return the sha1s of CHUNKS. */
+    static Set<String> ids(List<byte[]> chunks) {
+        Set<String> result = new HashSet<>();
+        for (byte[] chunk : chunks) {
+            result.add(Utils.sha1(chunk));
+        }
+        return result;
+    }
+
+    /** Return N random bytes drawn with SEED. */
+    static byte[] randomBytes(long seed, int n) {
+        byte[] result = new byte[n];
+        new Random(seed).nextBytes(result);
+        return result;
+    }
+
+    /** Return DATA with INSERT put before position AT and then DELETE
+     *  bytes removed after it. */
+    static byte[] edit(byte[] data, int at, byte[] insert, int delete) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.write(data, 0, at);
+        result.writeBytes(insert);
+        result.write(data, at + delete, data.length - at - delete);
+        return result.toByteArray();
+    }
+
+    @Test
+    public void smallTest() throws IOException {
+        assertEquals(0, chunks(new byte[0]).size());
+        assertEquals(1, chunks(randomBytes(1, 100)).size());
+        assertEquals(1, chunks(randomBytes(2, Chunker.MIN_CHUNK)).size());
+    }
+
+    /** Chunk sizes average about AVERAGE_CHUNK on random data, and input
+     *  without content to cut at, such as zeros, is cut at MAX_CHUNK. */
+    @Test
+    public void sizesTest() throws IOException {
+        byte[] data = randomBytes(3, 16 << 20);
+        int count = chunks(data).size();
+        assertTrue(count > data.length / (2 * Chunker.AVERAGE_CHUNK));
+        assertTrue(count < 2 * data.length / Chunker.AVERAGE_CHUNK);
+        for (byte[] chunk : chunks(new byte[4 * Chunker.MAX_CHUNK])) {
+            assertEquals(Chunker.MAX_CHUNK, chunk.length);
+        }
+    }
+
+    /** The chunks do not depend on how the input arrives. */
+    @Test
+    public void shortReadsTest() throws IOException {
+        byte[] data = randomBytes(4, 3 << 20);
+        ReadableByteChannel trickle = new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                ByteBuffer part = dst.slice();
+                part.limit(Math.min(part.limit(), 1 + random.nextInt(9000)));
+                int n = source.read(part);
+                dst.position(dst.position() + Math.max(n, 0));
+                return n;
+            }
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+            @Override
+            public void close() {
+            }
+            private final Random random = new Random(5);
+            private final ReadableByteChannel source =
+                Channels.newChannel(new ByteArrayInputStream(data));
+        };
+        List<byte[]> whole = chunks(data), trickled = chunks(data, trickle);
+        assertEquals(whole.size(), trickled.size());
+        for (int k = 0; k < whole.size(); k += 1) {
+            assertArrayEquals(whole.get(k), trickled.get(k));
+        }
+    }
+
+    /** An insertion or deletion changes only the chunks around it: those
+     *  before it are the same, and the boundaries after it fall back in
+     *  step with the old ones within a chunk or two. */
+    @Test
+    public void boundaryStabilityTest() throws IOException {
+        byte[] data = randomBytes(6, 8 << 20);
+        List<byte[]> old = chunks(data);
+        Random random = new Random(7);
+        for (int trial = 0; trial < 10; trial += 1) {
+            int at = random.nextInt(data.length - 1000);
+            byte[] changed = edit(data, at,
+                                  randomBytes(trial, random.nextInt(200)),
+                                  random.nextInt(200));
+            List<byte[]> now = chunks(changed);
+            Set<String> fresh = ids(now);
+            fresh.removeAll(ids(old));
+            assertTrue(fresh.size() <= 3);
+            int offset = 0;
+            for (int k = 0; offset + old.get(k).length <= at; k += 1) {
+                assertArrayEquals(old.get(k), now.get(k));
+                offset += old.get(k).length;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/** The client of Daemon: runs a gitlet command through the daemon of
+ *  the repository in the current directory, if one is running, and in
+ *  this process otherwise.  Usage is as for Main:
+ *      java gitlet.Client ARGS
+ *  This class uses nothing else from gitlet unless it has to run the
+ *  command itself, so that it starts quickly.
+ *  @author Darren Wang
+ */
+public class Client {
+
+    /** Run the command of ARGS. */
+    public static void main(String... args) {
+        if (!forward(args, System.out)) {
+            Main.main(args);
+        }
+        System.out.flush();
+    }
+
+    /** Send ARGS to the daemon and copy its output to OUT.  Return false
+     *  if there is no daemon to send them to. */
+    static boolean forward(String[] args, OutputStream out) {
+        Path socket = Path.of(".gitlet", "daemon.sock");
+        if (!java.nio.file.Files.exists(socket)) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            for (String arg : args) {
+                ByteBuffer request = StandardCharsets.UTF_8
+                    .encode(arg + "\0");
+                while (request.hasRemaining()) {
+                    channel.write(request);
+                }
+            }
+            channel.shutdownOutput();
+            Channels.newInputStream(channel).transferTo(out);
+            return true;
+        } catch (IOException excp) {
+            throw Utils.error("Lost the daemon: %s", excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** The binary encoding of Objects, used both on disk and for computing
+ *  their sha1s.  An encoded object is
+ *      MAGIC (2 bytes), VERSION (1 byte), TAG (1 byte), FIELDS
+ *  where TAG tells a commit, tree, blob or staging area apart and the
+ *  FIELDS are written by Objects.writeTo and Tree.writeTo with the
+ *  primitives below: unsigned LEB128 varints, varint-length-prefixed
+ *  UTF-8 strings and byte arrays, and sha1s as 20 raw bytes.  A blob's
+ *  FIELDS are the varint length of its contents followed by the raw
+ *  contents (see Blob).  A CHUNKED blob's FIELDS are the varint length
+ *  of its contents, the varint number of its chunks, and the sha1 of
+ *  each chunk, which is itself a blob.
+ *
+ *  Repositories written before this format hold Java-serialized objects.
+ *  Those are still decoded, under the sha1s they were stored with, and
+ *  everything written from then on uses this encoding.
+ *  @author Darren Wang
+ */
+class Codec {
+
+    /** Return the encoding of OBJ. */
+    static byte[] encode(Objects obj) {
+        Output out = new Output();
+        out.write(MAGIC[0]);
+        out.write(MAGIC[1]);
+        out.write(VERSION);
+        obj.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /** Return the encoding of TREE. */
+    static byte[] encode(Tree tree) {
+        Output out = new Output();
+        out.write(MAGIC[0]);
+        out.write(MAGIC[1]);
+        out.write(VERSION);
+        tree.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /** Return the tree encoded in BYTES. */
+    static Tree decodeTree(byte[] bytes) {
+        if (tag(bytes) != TREE) {
+            throw error("Not a tree.");
+        }
+        try {
+            return Tree.readFrom(new Input(bytes, 3));
+        } catch (BufferUnderflowException excp) {
+            throw error("Truncated object.");
+        }
+    }
+
+    /** Return the object encoded in BYTES, which may also be a legacy
+     *  Java-serialized object. */
+    static Objects decode(byte[] bytes) {
+        if (isLegacy(bytes)) {
+            return deserialize(bytes, Objects.class);
+        }
+        if (bytes.length < 3 || bytes[0] != MAGIC[0] || bytes[1] != MAGIC[1]
+                || bytes[2] != VERSION) {
+            throw error("Unknown object format.");
+        }
+        try {
+            return Objects.readFrom(new Input(bytes, 3));
+        } catch (BufferUnderflowException excp) {
+            throw error("Truncated object.");
+        }
+    }
+
+    /** Return the header of a blob with LENGTH bytes of contents. */
+    static byte[] blobHeader(long length) {
+        Output out = new Output();
+        out.write(MAGIC[0]);
+        out.write(MAGIC[1]);
+        out.write(VERSION);
+        out.write(BLOB);
+        out.writeVarint(length);
+        return out.toByteArray();
+    }
+
+    /** Return the encoding of a chunked blob of LENGTH bytes, whose
+     *  contents are those of the blobs CHUNKS in order. */
+    static byte[] encodeChunked(long length, List<String> chunks) {
+        Output out = new Output();
+        out.write(MAGIC[0]);
+        out.write(MAGIC[1]);
+        out.write(VERSION);
+        out.write(CHUNKED);
+        out.writeVarint(length);
+        out.writeVarint(chunks.size());
+        for (String chunk : chunks) {
+            out.writeId(chunk);
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the sha1s of the chunks of the chunked blob encoded in
+     *  BYTES, in order. */
+    static List<String> decodeChunks(byte[] bytes) {
+        if (tag(bytes) != CHUNKED) {
+            throw error("Not a chunked blob.");
+        }
+        try {
+            Input in = new Input(bytes, 4);
+            in.readVarint();
+            List<String> result = new ArrayList<>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                result.add(in.readId());
+            }
+            return result;
+        } catch (BufferUnderflowException excp) {
+            throw error("Truncated object.");
+        }
+    }
+
+    /** Return the length of the blob header at the start of BYTES, or -1
+     *  if BYTES do not start with one. */
+    static int blobHeaderLength(byte[] bytes) {
+        if (tag(bytes) != BLOB) {
+            return -1;
+        }
+        int k = 4;
+        while (k < bytes.length && (bytes[k] & 0x80) != 0) {
+            k += 1;
+        }
+        return k + 1;
+    }
+
+    /** Return the type tag of the object encoded in BYTES, or -1 if BYTES
+     *  are not in this encoding. */
+    static int tag(byte[] bytes) {
+        if (bytes.length < 4 || bytes[0] != MAGIC[0] || bytes[1] != MAGIC[1]
+                || bytes[2] != VERSION) {
+            return -1;
+        }
+        return bytes[3];
+    }
+
+    /** Return the hexadecimal numeral for the bytes of SHA1. */
+    static String toHex(byte[] sha1) {
+        char[] result = new char[2 * sha1.length];
+        for (int i = 0; i < sha1.length; i += 1) {
+            result[2 * i] = HEX[(sha1[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX[sha1[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Return true iff BYTES hold a Java-serialized object. */
+    static boolean isLegacy(byte[] bytes) {
+        return bytes.length >= 2
+                && bytes[0] == (byte) 0xac && bytes[1] == (byte) 0xed;
+    }
+
+    /** A growable buffer with the writing primitives of the encoding. */
+    static class Output extends ByteArrayOutputStream {
+
+        /** Write the unsigned varint N. */
+        void writeVarint(long n) {
+            while ((n & ~0x7fL) != 0) {
+                write((int) ((n & 0x7f) | 0x80));
+                n >>>= 7;
+            }
+            write((int) n);
+        }
+
+        /** Write the length of DATA, then DATA. */
+        void writeData(byte[] data) {
+            writeVarint(data.length);
+            write(data, 0, data.length);
+        }
+
+        /** Write S as length-prefixed UTF-8.  Null is written as the
+         *  empty string. */
+        void writeString(String s) {
+            writeData((s == null ? "" : s).getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** Write the hexadecimal SHA1 as 20 raw bytes. */
+        void writeId(String sha1) {
+            write(PackIndex.toBytes(sha1), 0, PackIndex.ID_BYTES);
+        }
+    }
+
+    /** A reader of the primitives written by Output. */
+    static class Input {
+
+        /** A reader of BYTES, starting at position START. */
+        Input(byte[] bytes, int start) {
+            buffer = ByteBuffer.wrap(bytes);
+            buffer.position(start);
+        }
+
+        /** Return the next byte, unsigned. */
+        int readByte() {
+            return buffer.get() & 0xff;
+        }
+
+        /** Return the next unsigned varint. */
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+        }
+
+        /** Return true iff there are bytes left to read. */
+        boolean hasRemaining() {
+            return buffer.hasRemaining();
+        }
+
+        /** Return the number of bytes read so far, counting from the
+         *  start of the array. */
+        int position() {
+            return buffer.position();
+        }
+
+        /** Return the next varint, which must fit in an int. */
+        int readInt() {
+            return (int) readVarint();
+        }
+
+        /** Return the next length-prefixed byte array. */
+        byte[] readData() {
+            byte[] result = new byte[readInt()];
+            buffer.get(result);
+            return result;
+        }
+
+        /** Return the next length-prefixed UTF-8 string. */
+        String readString() {
+            return new String(readData(), StandardCharsets.UTF_8);
+        }
+
+        /** Return the next 20-byte sha1, in hexadecimal. */
+        String readId() {
+            byte[] result = new byte[PackIndex.ID_BYTES];
+            buffer.get(result);
+            return toHex(result);
+        }
+
+        /** The bytes being read. */
+        private final ByteBuffer buffer;
+    }
+
+    /** Tags of the kinds of objects.  COMMIT is a commit that lists all
+     *  its files, as written before trees, and TREE_COMMIT one that
+     *  refers to the TREE of its files.  CHUNKED is a large blob stored
+     *  as a list of smaller ones. */
+    static final int COMMIT = 1, BLOB = 2, STAGE = 3, TREE = 4,
+        TREE_COMMIT = 5, CHUNKED = 6;
+
+    /** Marks an encoded object: "gl". */
+    private static final byte[] MAGIC = { 0x67, 0x6c };
+
+    /** Version of the encoding. */
+    private static final byte VERSION = 1;
+
+    /** Hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
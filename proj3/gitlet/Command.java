@@ -1,12 +1,15 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import static gitlet.Utils.*;
 import static gitlet.Files.*;
-import static java.util.Objects.requireNonNull;
 
 public class Command {
     static void init() {
@@ -15,115 +18,155 @@ public class Command {
         writeObject(initCommit);
     }
 
-    static void add(String file) {
-        File newFile = join(file);
-        Objects blob = new Objects(readContentsAsString(newFile), file);
-        writeObject(blob);
+    static void add(Collection<String> files) {
+        Objects stage = readStage(INDEX);
+        Map<String, String> hashes = hashWorkingFiles(files, stage);
+        for (String file : files) {
+            String sha1 = hashes.get(file);
+            if (stageFile(stage, sha1, file)) {
+                Blob.write(join(file), sha1);
+            }
+        }
+        writeStage(INDEX, stage);
     }
 
     static void commit(String msg) {
-        Objects toStageFiles = readObject(INDEX, Objects.class);
-        Objects stageRemove = readObject(INDEX_REMOVE, Objects.class);
+        Objects toStageFiles = readStage(INDEX);
+        Objects stageRemove = readStage(INDEX_REMOVE);
         if (toStageFiles.index.isEmpty() && stageRemove.index.isEmpty()) {
             System.out.println("No changes added to the commit.");
         }
 
-        Objects currHead = getCurrHeadCommit();
+        Objects currHead = copyObjectsHash(getCurrHead());
         currHead.updateIndex(toStageFiles, stageRemove);
         currHead.makeCommit(msg);
 
-        writeObject(currHead);
-
-        toStageFiles.index.clear();
-        stageRemove.index.clear();
-        Utils.writeObject(INDEX_REMOVE, toStageFiles);
-        Utils.writeObject(INDEX, toStageFiles);
+        Journal transaction = new Journal();
+        writeObject(currHead, transaction);
+        clearStages(toStageFiles, stageRemove, transaction);
+        transaction.commit();
     }
 
-    static void rm(String file) {
-        if (!join(file).exists()) {
-            return;
+    static void rm(Collection<String> files) {
+        List<String> present = new ArrayList<>();
+        for (String file : files) {
+            if (join(file).exists()) {
+                present.add(file);
+            }
         }
-        String removeFile
-                = readContentsAsString(join(file));
-        Objects removeBlob
-                = new Objects(removeFile, file);
-        updateRemoveStage(removeBlob);
+        updateRemoveStage(present);
     }
 
-    static void log() {
-        StringBuilder content = new StringBuilder();
-        List<String> pastCommits = pastCommits(readContentsAsString(CURR_HEAD));
-
-        for (String currHead : pastCommits) {
-            Objects curr = readObject(getObjectsFile(currHead), Objects.class);
-            content.append("=== \n")
+    /* Show the current branch's history, newest first, limited to
+     * RANGE. The walk and the limits use only the commit graph, and
+     * each commit shown is read and written out in turn, so the first
+     * appears at once however long the history is. */
+    static void log(LogRange range) {
+        CommitGraph graph = CommitGraph.get();
+        PrintStream out = bufferedOut();
+        int shown = 0;
+        for (String currHead : pastCommits(readContentsAsString(CURR_HEAD))) {
+            if (range.full(shown)) {
+                break;
+            }
+            if (range.timed()) {
+                long time = graph.time(graph.position(currHead));
+                if (range.past(time)) {
+                    break;
+                } else if (!range.admits(time)) {
+                    continue;
+                }
+            }
+            Objects curr = getObjectsHash(currHead);
+            out.append("=== \n")
                     .append("commit ").append(currHead).append("\n")
+                    .append(mergeLine(curr))
                     .append("Date: ").append(curr.getTimestamp()).append("\n")
                     .append(curr.getMsg()).append("\n\n");
+            shown += 1;
         }
-
-        System.out.println(content);
+        out.println();
+        out.flush();
     }
 
-    static void globalLog() {
-        List<String> allCommitHistory
-                = plainFilenamesIn(BRANCHES);
-        if (allCommitHistory == null) {
-            return;
+    /* The line that log shows for the parents of COMMIT if it is a
+     * merge, and the empty string otherwise. */
+    static String mergeLine(Objects commit) {
+        List<String> parents = commit.getParents();
+        if (parents.size() < 2) {
+            return "";
         }
-        for (String commit : allCommitHistory) {
-            StringBuilder content = new StringBuilder();
-            List<String> pastCommits = pastCommits(commit);
-
-            for (String currHead : pastCommits) {
-                File currHeadFile = getObjectsFile(currHead);
-                Objects curr
-                        = readObject(currHeadFile, Objects.class);
-                content.append("=== \n")
-                        .append("commit ").append(currHead).append("\n")
-                        .append("Date: ").append(curr.getTimestamp())
-                        .append("\n")
-                        .append(curr.getMsg()).append("\n\n");
-            }
+        return "Merge: " + parents.get(0).substring(0, 7) + " "
+                + parents.get(1).substring(0, 7) + "\n";
+    }
 
-            System.out.println(content);
+    /* Show every commit ever made, each once, newest first, limited to
+     * RANGE, from the message index and the commit graph, without
+     * reading commits. */
+    static void globalLog(LogRange range) {
+        MessageIndex messages = MessageIndex.get();
+        CommitGraph graph = CommitGraph.get();
+        PrintStream out = bufferedOut();
+        int shown = 0;
+        for (int k = messages.size() - 1; k >= 0; k -= 1) {
+            if (range.full(shown)) {
+                break;
+            }
+            if (range.timed()) {
+                long time = CommitGraph.parseTime(messages.timestamp(k));
+                if (range.past(time)) {
+                    break;
+                } else if (!range.admits(time)) {
+                    continue;
+                }
+            }
+            String id = messages.id(k);
+            int pos = graph.position(id);
+            out.append("=== \n")
+                    .append("commit ").append(id).append("\n");
+            if (pos >= 0 && graph.parent2(pos) >= 0) {
+                out.append("Merge: ")
+                        .append(graph.id(graph.parent1(pos)), 0, 7)
+                        .append(" ")
+                        .append(graph.id(graph.parent2(pos)), 0, 7)
+                        .append("\n");
+            }
+            out.append("Date: ").append(messages.timestamp(k))
+                    .append("\n")
+                    .append(messages.message(k)).append("\n\n");
+            shown += 1;
         }
+        out.flush();
+    }
+
+    /* A buffered stream onto the standard output, for commands that
+     * write a lot of it. It must be flushed, not closed. */
+    private static PrintStream bufferedOut() {
+        return new PrintStream(new BufferedOutputStream(System.out,
+                                                        OUT_BUFFER));
     }
 
-    static void find(String commitmsg) {
-        List<String> allCommitHistory
-                = plainFilenamesIn(BRANCHES);
-        if (allCommitHistory == null) {
+    /* Print the ids of all commits whose messages match COMMITMSG as
+     * MODE asks, found through the message index. */
+    static void find(String commitmsg, MessageIndex.Match mode) {
+        List<String> found = MessageIndex.get().find(commitmsg, mode);
+        if (found.isEmpty()) {
             System.out.println("Found no commit"
                     + " with that message.");
             return;
         }
-        boolean commitFound = false;
-        for (String commit : allCommitHistory) {
-            List<String> pastCommits = pastCommits(commit);
-            for (String currHead : pastCommits) {
-                File currHeadFile = getObjectsFile(currHead);
-                Objects curr
-                        = readObject(currHeadFile, Objects.class);
-                String msg = curr.getMsg();
-                if (msg.equals(commitmsg)) {
-                    commitFound = true;
-                    System.out.println(currHead);
-                }
-            }
-        }
-        if (!commitFound) {
-            System.out.println("Found no commit"
-                    + " with that message.");
+        StringBuilder content = new StringBuilder();
+        for (String id : found) {
+            content.append(id).append("\n");
         }
+        System.out.print(content);
     }
 
     static void status() {
-        Objects stage = readObject(INDEX, Objects.class);
-        Objects removeStage = readObject(INDEX_REMOVE, Objects.class);
+        Objects stage = readStage(INDEX);
+        Objects removeStage = readStage(INDEX_REMOVE);
         String currHead = readContentsAsString(CURR_HEAD);
-        List<String> branches = plainFilenamesIn(BRANCHES);
+        List<String> branches = branchNames();
         List<String> stageList = new ArrayList<>(
                 stage.index.keySet());
         List<String> removeStageList = new ArrayList<>(
@@ -134,13 +177,11 @@ public class Command {
         StringBuilder content = new StringBuilder("");
 
         content.append("=== Branches ===\n");
-        if (branches != null) {
-            for (String branch : branches) {
-                if (currHead.equals(branch)) {
-                    content.append("*");
-                }
-                content.append(branch).append("\n");
+        for (String branch : branches) {
+            if (currHead.equals(branch)) {
+                content.append("*");
             }
+            content.append(branch).append("\n");
         }
 
         content.append("\n=== Staged Files ===\n");
@@ -165,27 +206,22 @@ public class Command {
         System.out.println(content);
     }
 
-    static void checkoutPastFile(String sha1, String file) {
-        String currHead = readContentsAsString(CURR_HEAD);
-        List<String> pastCommits = pastCommits(currHead);
-        File pastFile = null;
-
-        if (pastCommits.contains(sha1)) {
-            pastFile = getObjectsFile(sha1);
-        }
-        if (pastFile == null) {
+    static void checkoutPastFile(String prefix, String file) {
+        String sha1 = CommitGraph.get().resolve(prefix);
+        if (sha1 == null
+                || !CommitGraph.get().isAncestor(sha1, getCurrHead())) {
             System.out.println("No commit with that id exists.");
             return;
         }
 
-        Objects commit = readObject(pastFile, Objects.class);
+        Objects commit = getObjectsHash(sha1);
 
-        if (!commit.index.containsKey(file)) {
+        Index ver = commit.getFile(file);
+        if (ver == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
 
-        Index ver = commit.index.get(file);
         File newBlobLoc = join(file);
         updateRepoFile(newBlobLoc, ver.getSha1());
     }
@@ -193,23 +229,23 @@ public class Command {
     static void checkoutHeadFile(String file) {
         Objects commit = getCurrHeadCommit();
 
-        if (!commit.index.containsKey(file)) {
+        Index ver = commit.getFile(file);
+        if (ver == null) {
             System.out.println("File does not exist in that commit.");
             return;
         }
 
-        String hash = commit.index.get(file).getSha1();
+        String hash = ver.getSha1();
         File newBlobLoc = join(file);
         updateRepoFile(newBlobLoc, hash);
     }
 
     static void checkoutBranch(String branch) {
         String currHead = readContentsAsString(CURR_HEAD);
-        List<String> branches = plainFilenamesIn(BRANCHES);
+        List<String> branches = branchNames();
         List<String> untrackedList = untrackedFiles();
-        Objects stagedContent = readObject(INDEX, Objects.class);
-        Objects unstagedContent = readObject(INDEX_REMOVE,
-                Objects.class);
+        Objects stagedContent = readStage(INDEX);
+        Objects unstagedContent = readStage(INDEX_REMOVE);
 
         if (!untrackedList.isEmpty()) {
             System.out.println("There is an untracked file in the way;"
@@ -220,78 +256,190 @@ public class Command {
             System.out.println("No need to checkout the current branch.");
             return;
         }
-        if (branches == null || !branches.contains(branch)) {
+        if (!branches.contains(branch)) {
             System.out.println("No such branch exists.");
             return;
         }
 
+        Objects prevCommit = getCurrHeadCommit();
         writeHead(branch);
-        Objects commit = readObject(getObjectsFile(getHeadGeneral(branch)),
-                Objects.class);
-        for (Map.Entry<String, Index> allEntry : commit.index.entrySet()) {
-            File entry = join(allEntry.getKey());
-            updateRepoFile(entry, allEntry.getValue().getSha1());
-        }
-
-        for (String i : untrackedList) {
-            restrictedDelete(i);
-        }
+        Objects commit = getObjectsHash(getHeadGeneral(branch));
+        switchTree(prevCommit, commit, List.of(), stagedContent);
 
         stagedContent.index.clear();
         unstagedContent.index.clear();
-        writeObject(INDEX, stagedContent);
-        writeObject(INDEX_REMOVE, unstagedContent);
+        writeStage(INDEX, stagedContent);
+        writeStage(INDEX_REMOVE, unstagedContent);
     }
 
     static void branch(String newBranch) {
+        if (!isBranchName(newBranch)) {
+            System.out.println("A branch name cannot end in .lock or .tmp.");
+            return;
+        }
         File newBranchFile = join(BRANCHES, newBranch);
         writeContents(newBranchFile, getCurrHead());
     }
 
     static void rmBranch(String branch) {
-
+        File branchFile = join(BRANCHES, branch);
+        if (!isBranchName(branch) || !branchFile.exists()) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        if (readContentsAsString(CURR_HEAD).equals(branch)) {
+            System.out.println("Cannot remove the current branch.");
+            return;
+        }
+        branchFile.delete();
     }
 
-    static void reset(String sha1) {
-        Objects stagedContent = readObject(INDEX, Objects.class);
-        Objects unstagedContent = readObject(INDEX_REMOVE,
-                Objects.class);
+    static void reset(String prefix) {
+        Objects stagedContent = readStage(INDEX);
+        Objects unstagedContent = readStage(INDEX_REMOVE);
         String currBranch
                 = Utils.readContentsAsString(CURR_HEAD);
-        File commitFile = getObjectsFile(sha1);
-        Objects commit = getObjectsHash(sha1);
 
         if (!untrackedFiles().isEmpty()) {
             System.out.println("There is an untracked file in the way;"
                     + " delete it, or add and commit it first.");
             return;
         }
-        if (!commitFile.exists()) {
+        String sha1 = CommitGraph.get().resolve(prefix);
+        if (sha1 == null) {
             System.out.println("No commit with that id exists.");
             return;
         }
+        Objects prevCommit = getCurrHeadCommit();
+        Objects commit = getObjectsHash(sha1);
 
         updateBranchHead(currBranch, sha1);
-
-        for (String files : requireNonNull(plainFilenamesIn(CWD))) {
-            if (!files.equals(".gitignore")
-                    && !files.equals("Makefile")
-                    && !files.equals("proj3.iml")) {
-                restrictedDelete(files);
-            }
-        }
-        for (Map.Entry<String, Index> allEntry : commit.index.entrySet()) {
-            File entry = join(allEntry.getKey());
-            updateRepoFile(entry, allEntry.getValue().getSha1());
-        }
+        switchTree(prevCommit, commit, stagedContent.index.keySet(),
+                   stagedContent);
 
         stagedContent.index.clear();
         unstagedContent.index.clear();
-        writeObject(INDEX, stagedContent);
-        writeObject(INDEX_REMOVE, unstagedContent);
+        writeStage(INDEX, stagedContent);
+        writeStage(INDEX_REMOVE, unstagedContent);
+    }
+
+    static void repack() {
+        int packed = Pack.repack();
+        System.out.println("Packed " + packed + " objects.");
+    }
+
+    /* Delete the unreachable loose objects older than GRACE
+     * milliseconds. */
+    static void gc(long grace) {
+        int removed = Files.collectGarbage(grace);
+        System.out.println("Removed " + removed + " unreachable objects.");
+    }
+
+    static void migrate() {
+        int migrated = Files.migrate();
+        System.out.println("Migrated " + migrated + " objects.");
     }
 
     static void merge(String branch) {
+        Objects stage = readStage(INDEX);
+        Objects removeStage = readStage(INDEX_REMOVE);
+        String currBranch = readContentsAsString(CURR_HEAD);
 
+        if (!stage.index.isEmpty() || !removeStage.index.isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        if (!isBranchName(branch) || !join(BRANCHES, branch).exists()) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        if (currBranch.equals(branch)) {
+            System.out.println("Cannot merge a branch with itself.");
+            return;
+        }
+        if (!untrackedFiles().isEmpty()) {
+            System.out.println("There is an untracked file in the way;"
+                    + " delete it, or add and commit it first.");
+            return;
+        }
+
+        String head = getCurrHead();
+        String other = getHeadGeneral(branch);
+        CommitGraph graph = CommitGraph.get();
+        if (graph.isAncestor(other, head)) {
+            System.out.println("Given branch is an ancestor of the"
+                    + " current branch.");
+            return;
+        }
+        if (graph.isAncestor(head, other)) {
+            reset(other);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+        String split = graph.mergeBase(head, other);
+
+        Objects ours = copyObjectsHash(head);
+        Objects theirs = getObjectsHash(other);
+        Map<String, Index> base = split == null ? Map.of()
+                : getObjectsHash(split).files();
+        TreeSet<String> files = new TreeSet<>(base.keySet());
+        files.addAll(ours.files().keySet());
+        files.addAll(theirs.files().keySet());
+
+        boolean conflict = false;
+        for (String file : files) {
+            String atSplit = blobOf(base, file);
+            String atHead = blobOf(ours.files(), file);
+            String atOther = blobOf(theirs.files(), file);
+            if (java.util.Objects.equals(atHead, atOther)
+                    || java.util.Objects.equals(atSplit, atOther)) {
+                continue;
+            }
+            if (java.util.Objects.equals(atSplit, atHead)) {
+                if (atOther == null) {
+                    removeStage.index.put(file, ours.getFile(file));
+                    deleteWorkingFile(file);
+                } else {
+                    updateRepoFile(join(file), atOther);
+                    stage.index.put(file, new Index(atOther, file));
+                }
+                continue;
+            }
+            byte[] merged = Merge.contents(readBlob(atSplit),
+                    readBlob(atHead), readBlob(atOther));
+            if (merged == null) {
+                conflict = true;
+                merged = Merge.conflict(readBlob(atHead), readBlob(atOther));
+            }
+            String sha1 = Blob.write(merged);
+            updateRepoFile(join(file), sha1);
+            stage.index.put(file, new Index(sha1, file));
+        }
+
+        ours.updateIndex(stage, removeStage);
+        ours.makeMergeCommit("Merged " + branch + " into " + currBranch
+                + ".", other);
+        Journal transaction = new Journal();
+        writeObject(ours, transaction);
+        clearStages(stage, removeStage, transaction);
+        transaction.commit();
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        }
     }
+
+    /* Get the sha1 of the blob of FILE in INDEX, or null if it has
+     * none. */
+    private static String blobOf(Map<String, Index> index, String file) {
+        Index entry = index.get(file);
+        return entry == null ? null : entry.getSha1();
+    }
+
+    /* Get the contents of blob SHA1, or no bytes if SHA1 is null. */
+    private static byte[] readBlob(String sha1) {
+        return sha1 == null ? new byte[0] : Blob.read(sha1);
+    }
+
+    /* Size of the buffer of bufferedOut. */
+    private static final int OUT_BUFFER = 1 << 16;
 }
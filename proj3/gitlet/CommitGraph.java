@@ -0,0 +1,469 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** The commit graph: every commit of the repository, with its parents,
+ *  time and generation number, kept in a compact file so that history
+ *  can be walked without reading any commit object.  The file is
+ *      MAGIC (4 bytes), VERSION (4 bytes), RECORD...
+ *  and each RECORD is
+ *      SHA1 (20 bytes), PARENT1 (4), PARENT2 (4), TIME (8), GENERATION (4)
+ *  where the parents are positions of earlier records (-1 if absent),
+ *  TIME is in milliseconds since the epoch, and the generation is one
+ *  more than the largest generation of the parents (1 for the initial
+ *  commit).  Records are only ever appended, one per new commit, and a
+ *  torn record at the end is ignored until the next record overwrites it.
+ *  @author Darren Wang
+ */
+class CommitGraph {
+
+    /** Return the commit graph of this repository, reading it on first
+     *  use and adding any branch head that it is missing.  The file is
+     *  only added to under the lock of the index, which commands such as
+     *  log do not otherwise take, so it is then read again under the
+     *  lock before the heads are added. */
+    static CommitGraph get() {
+        if (graph == null) {
+            graph = new CommitGraph();
+            graph.read();
+            if (!graph.missingHeads().isEmpty()) {
+                Lock.runLocked(INDEX, () -> {
+                    graph = new CommitGraph();
+                    graph.read();
+                    for (String head : graph.missingHeads()) {
+                        graph.addHistory(head);
+                    }
+                });
+            }
+        }
+        return graph;
+    }
+
+    /** Return the heads of the branches that this graph lacks. */
+    private List<String> missingHeads() {
+        List<String> result = new ArrayList<>();
+        for (String branch : branchNames()) {
+            String head = getHeadGeneral(branch);
+            if (!contains(head)) {
+                result.add(head);
+            }
+        }
+        return result;
+    }
+
+    /** Forget the graph read by this process, and delete the file if
+     *  DISCARD, so that it is rebuilt from the commits on next use. */
+    static void reset(boolean discard) {
+        graph = null;
+        if (discard) {
+            GRAPH.delete();
+        }
+    }
+
+    /** Forget the graph read by this process if another process has
+     *  changed its file since it was last read or written here, as its
+     *  fingerprint shows.  Main calls this before every command, once it
+     *  holds the lock of the index, so that a process that runs many
+     *  commands never adds to the file from a stale copy. */
+    static void refresh() {
+        if (graph != null && !java.util.Objects.equals(fingerprint(GRAPH),
+                                                       graph.fingerprint)) {
+            graph = null;
+        }
+    }
+
+    /** Return the number of commits in this graph. */
+    int size() {
+        return size;
+    }
+
+    /** Return true iff commit ID is in this graph. */
+    boolean contains(String id) {
+        return positions.containsKey(id);
+    }
+
+    /** Return the position of commit ID, or -1 if it is not here. */
+    int position(String id) {
+        Integer k = positions.get(id);
+        return k == null ? -1 : k;
+    }
+
+    /** Return the id of the only commit whose id starts with PREFIX, in
+     *  either case, or null if there is none or PREFIX is shorter than
+     *  MIN_ABBREV.  It is an error for several commits to match.  The
+     *  ids are searched in sorted order, from the range of those with
+     *  the same first byte (the two-character directory of a loose
+     *  object), so the time taken grows only with the log of the number
+     *  of commits. */
+    String resolve(String prefix) {
+        String key = prefix.toLowerCase();
+        if (key.length() == UID_LENGTH) {
+            return contains(key) ? key : null;
+        }
+        if (key.length() < MIN_ABBREV || key.length() > UID_LENGTH
+                || !isHex(key)) {
+            return null;
+        }
+        sortIds();
+        int first = Integer.parseInt(key.substring(0, 2), 16);
+        int lo = first == 0 ? 0 : fanout[first - 1], hi = fanout[first];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == size || !sorted[lo].startsWith(key)) {
+            return null;
+        }
+        if (lo + 1 < size && sorted[lo + 1].startsWith(key)) {
+            throw error("Commit id %s is ambiguous.", prefix);
+        }
+        return sorted[lo];
+    }
+
+    /** Return the id of the commit at position K. */
+    String id(int k) {
+        return ids[k];
+    }
+
+    /** Return the position of the first parent of the commit at K, or -1
+     *  for the initial commit. */
+    int parent1(int k) {
+        return parents1[k];
+    }
+
+    /** Return the position of the second parent of the commit at K, or
+     *  -1 if it is not a merge. */
+    int parent2(int k) {
+        return parents2[k];
+    }
+
+    /** Return the time of the commit at K, in milliseconds. */
+    long time(int k) {
+        return times[k];
+    }
+
+    /** Return the generation number of the commit at K. */
+    int generation(int k) {
+        return generations[k];
+    }
+
+    /** Return true iff commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors.  Commits whose generation is below that of ANCESTOR
+     *  cannot reach it, so the search never goes below them, nor below
+     *  a commit whose reachability bitmap answers for its history. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int target = position(ancestor), start = position(descendant);
+        if (target < 0 || start < 0) {
+            return false;
+        }
+        Bitmaps bitmaps = Bitmaps.get();
+        int bit = bitmaps.bit(ancestor);
+        int floor = generations[target];
+        boolean[] seen = new boolean[size];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(start);
+        seen[start] = true;
+        while (!work.isEmpty()) {
+            int k = work.pop();
+            if (k == target) {
+                return true;
+            }
+            if (bit >= 0 && bitmaps.has(ids[k])) {
+                if (bitmaps.reaches(ids[k], bit)) {
+                    return true;
+                }
+                continue;
+            }
+            for (int p : new int[] { parents1[k], parents2[k] }) {
+                if (p >= 0 && !seen[p] && generations[p] >= floor) {
+                    seen[p] = true;
+                    work.push(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return the latest common ancestor of commits A and B, or null if
+     *  they have none.  Both commits are walked at once, always taking
+     *  the queued commit of highest generation next and painting it with
+     *  the side(s) it was reached from.  Every descendant of a commit has
+     *  a higher generation, so the first commit taken with both colors is
+     *  a common ancestor that no other common ancestor descends from, and
+     *  nothing below it is visited. */
+    String mergeBase(String a, String b) {
+        int start1 = position(a), start2 = position(b);
+        if (start1 < 0 || start2 < 0) {
+            return null;
+        }
+        byte[] paint = new byte[size];
+        PriorityQueue<Integer> work = new PriorityQueue<>(
+            (x, y) -> generations[x] != generations[y]
+                      ? Integer.compare(generations[y], generations[x])
+                      : Integer.compare(y, x));
+        paint[start1] |= SIDE1;
+        paint[start2] |= SIDE2;
+        work.add(start1);
+        if (start2 != start1) {
+            work.add(start2);
+        }
+        while (!work.isEmpty()) {
+            int k = work.poll();
+            if (paint[k] == (SIDE1 | SIDE2)) {
+                return ids[k];
+            }
+            for (int p : new int[] { parents1[k], parents2[k] }) {
+                if (p >= 0 && (paint[p] | paint[k]) != paint[p]) {
+                    if (paint[p] == 0) {
+                        work.add(p);
+                    }
+                    paint[p] |= paint[k];
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Add commit ID, whose object is COMMIT and whose parents must
+     *  already be here, to this graph and its file. */
+    void add(String id, Objects commit) {
+        if (contains(id)) {
+            return;
+        }
+        List<String> parents = commit.getParents();
+        int p1 = parents.isEmpty() ? -1 : position(parents.get(0));
+        int p2 = parents.size() < 2 ? -1 : position(parents.get(1));
+        int gen = 1 + Math.max(p1 < 0 ? 0 : generations[p1],
+                               p2 < 0 ? 0 : generations[p2]);
+        long time = parseTime(commit.getTimestamp());
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        record.put(PackIndex.toBytes(id)).putInt(p1).putInt(p2)
+            .putLong(time).putInt(gen);
+        record.flip();
+        if (!java.util.Objects.equals(fingerprint(GRAPH), fingerprint)) {
+            throw error("The commit graph was changed by another process.");
+        }
+        try (FileChannel out = FileChannel.open(GRAPH.toPath(), CREATE,
+                                                WRITE)) {
+            long end = HEADER + (long) size * RECORD;
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                out.write(header, 0);
+            }
+            out.write(record, end);
+            out.truncate(end + RECORD);
+        } catch (IOException excp) {
+            throw error("Cannot write commit graph: %s", excp.getMessage());
+        }
+        fingerprint = fingerprint(GRAPH);
+        append(id, p1, p2, time, gen);
+    }
+
+    /** Remove the commits IDS, none of which may be a parent of a commit
+     *  that stays, from the graph and its file, which is rewritten. */
+    static void remove(Set<String> ids) {
+        CommitGraph old = get();
+        int[] moved = new int[old.size];
+        ByteBuffer out = ByteBuffer.allocate(HEADER + old.size * RECORD);
+        out.putInt(MAGIC).putInt(VERSION);
+        int kept = 0;
+        for (int k = 0; k < old.size; k += 1) {
+            if (ids.contains(old.ids[k])) {
+                moved[k] = -1;
+                continue;
+            }
+            moved[k] = kept;
+            kept += 1;
+            int p1 = old.parents1[k], p2 = old.parents2[k];
+            out.put(PackIndex.toBytes(old.ids[k]))
+                .putInt(p1 < 0 ? -1 : moved[p1])
+                .putInt(p2 < 0 ? -1 : moved[p2])
+                .putLong(old.times[k]).putInt(old.generations[k]);
+        }
+        if (kept < old.size) {
+            writeContents(GRAPH, Arrays.copyOf(out.array(), out.position()));
+            graph = null;
+        }
+    }
+
+    /** Add HEAD and all its ancestors that are missing to this graph,
+     *  reading their commit objects. */
+    private void addHistory(String head) {
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(head);
+        while (!work.isEmpty()) {
+            String id = work.peek();
+            if (contains(id)) {
+                work.pop();
+                continue;
+            }
+            Objects commit = getObjectsHash(id);
+            boolean ready = true;
+            for (String p : commit.getParents()) {
+                if (!contains(p)) {
+                    work.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                work.pop();
+                add(id, commit);
+            }
+        }
+    }
+
+    /** Load the records of the graph file, if there is one, noting its
+     *  fingerprint first. */
+    private void read() {
+        fingerprint = fingerprint(GRAPH);
+        if (fingerprint == null) {
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(readContents(GRAPH));
+        if (in.remaining() < HEADER || in.getInt() != MAGIC
+                || in.getInt() != VERSION) {
+            return;
+        }
+        byte[] id = new byte[PackIndex.ID_BYTES];
+        while (in.remaining() >= RECORD) {
+            in.get(id);
+            append(Codec.toHex(id), in.getInt(), in.getInt(), in.getLong(),
+                   in.getInt());
+        }
+    }
+
+    /** Return true iff TEXT is all lower-case hexadecimal digits. */
+    private static boolean isHex(String text) {
+        for (int k = 0; k < text.length(); k += 1) {
+            if (Character.digit(text.charAt(k), 16) < 0
+                    || Character.isUpperCase(text.charAt(k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Fill in SORTED and FANOUT, if a commit has been added since they
+     *  were last filled in. */
+    private void sortIds() {
+        if (sorted != null) {
+            return;
+        }
+        sorted = Arrays.copyOf(ids, size);
+        Arrays.sort(sorted);
+        fanout = new int[FANOUT_COUNT];
+        for (String id : sorted) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        for (int b = 1; b < FANOUT_COUNT; b += 1) {
+            fanout[b] += fanout[b - 1];
+        }
+    }
+
+    /** Add a record to the in-memory graph. */
+    private void append(String id, int p1, int p2, long time, int gen) {
+        if (size == ids.length) {
+            int n = 2 * size + 16;
+            ids = Arrays.copyOf(ids, n);
+            parents1 = Arrays.copyOf(parents1, n);
+            parents2 = Arrays.copyOf(parents2, n);
+            times = Arrays.copyOf(times, n);
+            generations = Arrays.copyOf(generations, n);
+        }
+        ids[size] = id;
+        parents1[size] = p1;
+        parents2[size] = p2;
+        times[size] = time;
+        generations[size] = gen;
+        positions.put(id, size);
+        size += 1;
+        sorted = null;
+    }
+
+    /** Return the time denoted by the commit TIMESTAMP, in
+     *  milliseconds, or 0 if it cannot be parsed. */
+    static long parseTime(String timestamp) {
+        try {
+            return new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z",
+                    new Locale("en")).parse(timestamp).getTime();
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
+    /** The commit graph file. */
+    static final File GRAPH = join(".gitlet", "commit-graph");
+
+    /** Identifies a commit graph file: "GCGR". */
+    private static final int MAGIC = 0x47434752;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first record, and in each record. */
+    private static final int HEADER = 8, RECORD = 40;
+
+    /** Shortest abbreviation of a commit id that resolve accepts. */
+    static final int MIN_ABBREV = 4;
+
+    /** Number of fanout entries: one per possible first byte. */
+    private static final int FANOUT_COUNT = 256;
+
+    /** Colors of the commits reached from either side by mergeBase. */
+    private static final byte SIDE1 = 1, SIDE2 = 2;
+
+    /** The graph of this repository, once read. */
+    private static CommitGraph graph;
+
+    /** The fingerprint of the graph file as last read or written here,
+     *  or null if it did not exist. */
+    private String fingerprint;
+
+    /** Number of commits. */
+    private int size;
+
+    /** Commit ids by position. */
+    private String[] ids = new String[0];
+
+    /** Positions of the first and second parents by position. */
+    private int[] parents1 = new int[0], parents2 = new int[0];
+
+    /** Commit times by position. */
+    private long[] times = new long[0];
+
+    /** Generation numbers by position. */
+    private int[] generations = new int[0];
+
+    /** The commit ids in sorted order, or null if not yet sorted. */
+    private String[] sorted;
+
+    /** Entry B is the number of ids in SORTED whose first byte is at
+     *  most B. */
+    private int[] fanout;
+
+    /** Position of each commit id. */
+    private final HashMap<String, Integer> positions = new HashMap<>();
+}
@@ -0,0 +1,45 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static gitlet.LockTest.gitlet;
+
+/** Tests of the commit graph.
+ *  @author Darren Wang
+ */
+public class CommitGraphTest {
+
+    /** Add the commits ARGS, each a copy of the current head with its
+     *  own id, to the commit graph of the repository in the current
+     *  directory, as if commits with such ids had been made. */
+    public static void main(String... args) {
+        CommitGraph graph = CommitGraph.get();
+        Objects head = Files.getCurrHeadCommit();
+        for (String id : args) {
+            graph.add(id, head);
+        }
+    }
+
+    /** An abbreviation that starts two commit ids names neither, and
+     *  one shorter than MIN_ABBREV names none. */
+    @Test
+    public void ambiguousAbbreviationTest() throws Exception {
+        File dir = UnitTest.tempDir();
+        gitlet(dir, "init");
+        String id1 = "abcd0" + "0".repeat(34) + "1",
+            id2 = "abcd0" + "0".repeat(34) + "2";
+        assertEquals("", UnitTest.run(dir, "gitlet.CommitGraphTest",
+                                      id1, id2));
+
+        assertEquals("Commit id abcd0 is ambiguous.\n",
+                     gitlet(dir, "checkout", "abcd0", "--", "f.txt"));
+        assertEquals("Commit id ABCD is ambiguous.\n",
+                     gitlet(dir, "reset", "ABCD"));
+        assertEquals("No commit with that id exists.\n",
+                     gitlet(dir, "reset", "abc"));
+        assertEquals("No commit with that id exists.\n",
+                     gitlet(dir, "reset", "abcd1"));
+    }
+}
@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** A long-lived gitlet server for the repository in the current
+ *  directory, so that commands skip JVM startup and find the commit
+ *  graph, pack index and object cache already loaded.  Usage:
+ *      java gitlet.Daemon [OPTIONS]
+ *  where OPTIONS, as for Main, are the defaults of every command.  It
+ *  listens on the Unix domain socket .gitlet/daemon.sock.  A request is
+ *  the arguments of one command, each followed by a NUL byte, after
+ *  which the client shuts down its output; the reply is the command's
+ *  output, after which the daemon closes the connection.  Client is
+ *  such a client.  Commands run one at a time and take the same locks
+ *  as separate processes, so both may be used at once: Main checks the
+ *  fingerprints of the files behind the daemon's copies before each
+ *  command, under the lock of the index, and drops the copies of those
+ *  another process has changed.  Deleting the socket stops the daemon.
+ *  @author Darren Wang
+ */
+public class Daemon {
+
+    /** Serve the repository in the current directory, with the options
+     *  ARGS. */
+    public static void main(String... args) throws IOException {
+        if (!join(".gitlet").isDirectory()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (args.length > 0 && Main.parseOptions(args) == null) {
+            return;
+        }
+        UnixDomainSocketAddress address =
+            UnixDomainSocketAddress.of(SOCKET.toPath());
+        if (SOCKET.exists()) {
+            try {
+                SocketChannel.open(address).close();
+                System.out.println("A daemon is already running.");
+                return;
+            } catch (IOException excp) {
+                SOCKET.delete();
+            }
+        }
+        new Daemon().serve(address);
+    }
+
+    /** Accept and run requests at ADDRESS until the socket is
+     *  deleted. */
+    private void serve(UnixDomainSocketAddress address) throws IOException {
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(address);
+        watcher = SOCKET.toPath().getFileSystem().newWatchService();
+        join(".gitlet").toPath().register(watcher, ENTRY_DELETE);
+        Thread watching = new Thread(this::watchRepository);
+        watching.setDaemon(true);
+        watching.start();
+
+        boolean stats = Main.stats;
+        int threads = Files.threads;
+        Journal.Durability durability = Journal.durability;
+        try {
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    Main.stats = stats;
+                    Files.threads = threads;
+                    Journal.durability = durability;
+                    handle(client);
+                }
+            }
+        } catch (IOException excp) {
+            if (server.isOpen()) {
+                throw excp;
+            }
+        } finally {
+            watcher.close();
+            SOCKET.delete();
+        }
+    }
+
+    /** Run the command sent by CLIENT, sending it the output. */
+    private void handle(SocketChannel client) throws IOException {
+        InputStream in = Channels.newInputStream(client);
+        List<String> args = new ArrayList<>();
+        ByteArrayOutputStream arg = new ByteArrayOutputStream();
+        for (int b = in.read(); b >= 0; b = in.read()) {
+            if (b == 0) {
+                args.add(arg.toString(StandardCharsets.UTF_8));
+                arg.reset();
+            } else {
+                arg.write(b);
+            }
+        }
+
+        PrintStream stdout = System.out, stderr = System.err;
+        PrintStream out = new PrintStream(Channels.newOutputStream(client),
+                                          false, StandardCharsets.UTF_8);
+        System.setOut(out);
+        System.setErr(out);
+        try {
+            Main.main(args.toArray(new String[0]));
+        } catch (RuntimeException excp) {
+            out.println("Internal error: " + excp);
+        } finally {
+            out.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+    }
+
+    /** Wait for deletions in .gitlet until the watch service is closed,
+     *  and stop serving when the socket or the repository is deleted. */
+    private void watchRepository() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                key.pollEvents();
+                if (!key.reset() || !SOCKET.exists()) {
+                    server.close();
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException
+                 | IOException excp) {
+            return;
+        }
+    }
+
+    /** The socket of the daemon of this repository. */
+    static final File SOCKET = join(".gitlet", "daemon.sock");
+
+    /** The listening socket. */
+    private ServerSocketChannel server;
+
+    /** Reports deletions in .gitlet. */
+    private WatchService watcher;
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static gitlet.Utils.*;
+
+/** Binary deltas in the spirit of git's pack format.  A delta is the
+ *  length of the target followed by a sequence of COPY (offset, length)
+ *  instructions, which reuse a run of bytes of the base, and INSERT
+ *  (length, bytes) instructions, which carry literal bytes.
+ *  @author Darren Wang
+ */
+class Delta {
+
+    /** Return a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(target.length);
+            int pos = 0, literal = 0;
+            while (pos + BLOCK <= target.length) {
+                Integer at = blocks.get(hash(target, pos));
+                if (at == null
+                        || !Arrays.equals(base, at, at + BLOCK,
+                                target, pos, pos + BLOCK)) {
+                    pos += 1;
+                    continue;
+                }
+                int start = at, targetStart = pos;
+                while (targetStart > literal && start > 0
+                        && base[start - 1] == target[targetStart - 1]) {
+                    start -= 1;
+                    targetStart -= 1;
+                }
+                int end = at + BLOCK, targetEnd = pos + BLOCK;
+                while (end < base.length && targetEnd < target.length
+                        && base[end] == target[targetEnd]) {
+                    end += 1;
+                    targetEnd += 1;
+                }
+                insert(out, target, literal, targetStart);
+                out.writeByte(COPY);
+                out.writeInt(start);
+                out.writeInt(end - start);
+                pos = literal = targetEnd;
+            }
+            insert(out, target, literal, target.length);
+            out.close();
+        } catch (IOException excp) {
+            throw error("Internal error creating delta.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(delta));
+            byte[] target = new byte[in.readInt()];
+            int pos = 0;
+            while (pos < target.length) {
+                int op = in.readByte();
+                if (op == COPY) {
+                    int offset = in.readInt(), length = in.readInt();
+                    System.arraycopy(base, offset, target, pos, length);
+                    pos += length;
+                } else {
+                    int length = in.readInt();
+                    in.readFully(target, pos, length);
+                    pos += length;
+                }
+            }
+            return target;
+        } catch (IOException | IndexOutOfBoundsException excp) {
+            throw error("Corrupt delta.");
+        }
+    }
+
+    /** Write an INSERT of DATA[FROM .. TO - 1] to OUT, if non-empty. */
+    private static void insert(DataOutputStream out, byte[] data,
+                               int from, int to) throws IOException {
+        if (from < to) {
+            out.writeByte(INSERT);
+            out.writeInt(to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at POS. */
+    private static int hash(byte[] data, int pos) {
+        int h = 0;
+        for (int i = pos; i < pos + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Size of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK = 16;
+
+    /** Instruction tags. */
+    private static final int INSERT = 0, COPY = 1;
+}
@@ -6,7 +6,6 @@ import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -18,7 +17,8 @@ import static java.lang.Math.max;
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  Matching uses Myers' O((N+M)D) algorithm in linear space, where D
+ *  is the number of differing items, or optionally patience diff.
  *  @author P. N. Hilfinger */
 public class Diff {
 
@@ -27,8 +27,8 @@ public class Diff {
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        _pairs = null;
+        _ids1 = _ids2 = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -48,8 +48,8 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
-        _lls = null;
-        _todo = null;
+        _pairs = null;
+        _ids1 = _ids2 = null;
     }
 
     /** Return the first of the current sequences. */
@@ -72,63 +72,29 @@ public class Diff {
         return _lines2.get(k);
     }
 
+    /** Set the algorithm used to match the current sequences to ALG.
+     *  MYERS (the default) finds a longest common subsequence.  PATIENCE
+     *  first matches lines that occur exactly once in each sequence, which
+     *  are usually the meaningful ones in code, and uses MYERS only between
+     *  them; its matches need not form a longest common subsequence. */
+    public void setAlgorithm(Algorithm alg) {
+        _algorithm = alg;
+        _pairs = null;
+    }
+
     /** Return the length of the longest subsequence of the first K1 and K2
      *  items, respectively, of the current data sequences. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
         if (k1 == 0 || k2 == 0
             || k1 > _lines1.size() || k2 > _lines2.size()) {
             return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
-            }
         }
-        return _lls[k1][k2];
+        if (k1 == _lines1.size() && k2 == _lines2.size()
+            && _algorithm == Algorithm.MYERS) {
+            return pairs().length / 2;
+        }
+        return (k1 + k2 - editDistance(k1, k2)) / 2;
     }
 
     /** Return the length of the longest common subsequence of the current
@@ -145,19 +111,7 @@ public class Diff {
         if (_lines1.size() != _lines2.size()) {
             return false;
         }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
-    }
-
-    /** Return an array containing the int values of the items in LIST. */
-    private int[] toIntArr(Collection<Integer> list) {
-        int[] result = new int[list.size()];
-        int i;
-        i = 0;
-        for (int x : list) {
-            result[i] = x;
-            i += 1;
-        }
-        return result;
+        return pairs().length / 2 == _lines1.size();
     }
 
     /** Return largest common subsequence of the sequences being compared as
@@ -166,30 +120,23 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
+        checkData();
+        int[] pairs = pairs();
+        int[] result = new int[3 * (pairs.length / 2)];
+        int n;
+        n = 0;
+        for (int k = 0; k < pairs.length; k += 2) {
+            if (n > 0 && result[n - 3] + result[n - 1] == pairs[k]
+                && result[n - 2] + result[n - 1] == pairs[k + 1]) {
+                result[n - 1] += 1;
             } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
-                }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
+                result[n] = pairs[k];
+                result[n + 1] = pairs[k + 1];
+                result[n + 2] = 1;
+                n += 3;
             }
         }
-        return toIntArr(resultList);
+        return Arrays.copyOf(result, n);
     }
 
     /** Return the edit that converts the first of the sequences being compared
@@ -202,7 +149,7 @@ public class Diff {
      *  removal of lines or addition of lines. */
     public int[] diffs() {
         int[] common = commonSubsequence();
-        ArrayList<Integer> result = new ArrayList<>();
+        IntList result = new IntList();
         int e1, e2;
         e1 = e2 = 0;
         for (int k = 0; k < common.length; k += 3) {
@@ -221,7 +168,7 @@ public class Diff {
             result.add(e2);
             result.add(_lines2.size() - e2);
         }
-        return toIntArr(result);
+        return result.toArray();
     }
 
     /** Raise an exception if there are no current data sequences for
@@ -232,45 +179,350 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
+    /** Return the matched items of the current sequences, as pairs
+     *  i0, j0, i1, j1, ... of positions in the first and second sequence,
+     *  in increasing order, computing them if needed. */
+    private int[] pairs() {
+        if (_pairs == null) {
+            int n1 = _lines1.size(), n2 = _lines2.size();
+            int prefix, suffix;
+            prefix = suffix = 0;
+            while (prefix < n1 && prefix < n2
+                   && _lines1.get(prefix).equals(_lines2.get(prefix))) {
+                prefix += 1;
+            }
+            while (suffix < n1 - prefix && suffix < n2 - prefix
+                   && _lines1.get(n1 - suffix - 1)
+                      .equals(_lines2.get(n2 - suffix - 1))) {
+                suffix += 1;
+            }
+
+            IntList out = new IntList();
+            for (int k = 0; k < prefix; k += 1) {
+                out.add(k, k);
+            }
+            intern(prefix, n1 - suffix, prefix, n2 - suffix);
+            if (_algorithm == Algorithm.PATIENCE) {
+                _count1 = new int[_distinct.size()];
+                _count2 = new int[_distinct.size()];
+                _where1 = new int[_distinct.size()];
+                patience(prefix, n1 - suffix, prefix, n2 - suffix, out);
+                _count1 = _count2 = _where1 = null;
+            } else {
+                myers(prefix, n1 - suffix, prefix, n2 - suffix, out);
+            }
+            for (int k = suffix; k > 0; k -= 1) {
+                out.add(n1 - k, n2 - k);
+            }
+            _pairs = out.toArray();
+        }
+        return _pairs;
+    }
+
+    /** Give items A0 .. A1 - 1 of the first sequence and B0 .. B1 - 1 of
+     *  the second their ids: small ints, equal exactly for equal items,
+     *  from a hash table shared by both sequences.  The matching
+     *  algorithms then compare ints rather than strings. */
+    private void intern(int a0, int a1, int b0, int b1) {
+        if (_ids1 == null) {
+            _ids1 = new int[_lines1.size()];
+            _ids2 = new int[_lines2.size()];
+            _slots = new int[Integer.highestOneBit(
+                2 * (a1 - a0 + b1 - b0) + 16) * 2];
+            _distinct = new ArrayList<>();
+        }
+        for (int i = a0; i < a1; i += 1) {
+            _ids1[i] = idOf(_lines1.get(i));
+        }
+        for (int j = b0; j < b1; j += 1) {
+            _ids2[j] = idOf(_lines2.get(j));
+        }
+    }
+
+    /** Return the id of LINE, giving it the next one if it has none. */
+    private int idOf(String line) {
+        if (2 * _distinct.size() >= _slots.length) {
+            int[] old = _slots;
+            _slots = new int[2 * old.length];
+            for (int id : old) {
+                if (id != 0) {
+                    _slots[slotOf(_distinct.get(id - 1))] = id;
+                }
+            }
+        }
+        int k = slotOf(line);
+        if (_slots[k] == 0) {
+            _distinct.add(line);
+            _slots[k] = _distinct.size();
+        }
+        return _slots[k] - 1;
+    }
+
+    /** Return the slot of _slots that holds the id of LINE, or the empty
+     *  slot where it belongs (open addressing with linear probing). */
+    private int slotOf(String line) {
+        int mask = _slots.length - 1;
+        int h = line.hashCode() * 0x9e3779b9;
+        int k = (h ^ h >>> 16) & mask;
+        while (_slots[k] != 0 && !_distinct.get(_slots[k] - 1).equals(line)) {
+            k = (k + 1) & mask;
+        }
+        return k;
+    }
+
+    /** Return true iff item I of the first sequence equals item J of the
+     *  second.  Both must have been interned. */
+    private boolean same(int i, int j) {
+        return _ids1[i] == _ids2[j];
+    }
+
+    /** Append to OUT the pairs of a longest common subsequence of items
+     *  A0 .. A1 - 1 of the first sequence and B0 .. B1 - 1 of the
+     *  second, by Myers' linear-space refinement of his O((N+M)D)
+     *  algorithm: find the middle snake of a shortest edit script, then
+     *  solve the parts before and after it in the same way. */
+    private void myers(int a0, int a1, int b0, int b1, IntList out) {
+        while (a0 < a1 && b0 < b1 && same(a0, b0)) {
+            out.add(a0, b0);
+            a0 += 1;
+            b0 += 1;
+        }
+        int suffix;
+        suffix = 0;
+        while (a1 - suffix > a0 && b1 - suffix > b0
+               && same(a1 - suffix - 1, b1 - suffix - 1)) {
+            suffix += 1;
+        }
+        a1 -= suffix;
+        b1 -= suffix;
+        if (a0 < a1 && b0 < b1) {
+            int[] snake = middleSnake(a0, a1, b0, b1);
+            myers(a0, snake[0], b0, snake[1], out);
+            for (int x = snake[0], y = snake[1]; x < snake[2]; x += 1) {
+                out.add(x, y);
+                y += 1;
+            }
+            myers(snake[2], a1, snake[3], b1, out);
+        }
+        for (int k = 0; k < suffix; k += 1) {
+            out.add(a1 + k, b1 + k);
+        }
+    }
+
+    /** Return the middle snake x, y, u, v of a shortest edit script from
+     *  items A0 .. A1 - 1 of the first sequence to B0 .. B1 - 1 of the
+     *  second: the run of matches from (x, y) to (u, v) that the
+     *  forward search from the start and the backward search from the
+     *  end first meet on.  The first and last items of the two ranges
+     *  must differ. */
+    private int[] middleSnake(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0, m = b1 - b0, delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int dmax = (n + m + 1) / 2, off = dmax + 1;
+        int[] vf = new int[2 * off + 1], vb = new int[2 * off + 1];
+        for (int d = 0; d <= dmax; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && vf[off + k - 1] < vf[off + k + 1]
+                    ? vf[off + k + 1] : vf[off + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && same(a0 + x, b0 + y)) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int kb = delta - k;
+                if (odd && kb >= -(d - 1) && kb <= d - 1
+                    && x + vb[off + kb] >= n) {
+                    return new int[] { a0 + x0, b0 + y0, a0 + x, b0 + y };
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && vb[off + k - 1] < vb[off + k + 1]
+                    ? vb[off + k + 1] : vb[off + k - 1] + 1;
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && same(a1 - x - 1, b1 - y - 1)) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + k] = x;
+                int kf = delta - k;
+                if (!odd && kf >= -d && kf <= d && x + vf[off + kf] >= n) {
+                    return new int[] { a1 - x, b1 - y, a1 - x0, b1 - y0 };
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
     }
 
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
+    /** Return the length of a shortest edit script from the first K1
+     *  items of the first sequence to the first K2 of the second, by the
+     *  greedy forward pass of Myers' algorithm. */
+    private int editDistance(int k1, int k2) {
+        intern(0, k1, 0, k2);
+        int off = k1 + k2 + 1;
+        int[] v = new int[2 * off + 1];
+        for (int d = 0; ; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || k != d && v[off + k - 1] < v[off + k + 1]
+                    ? v[off + k + 1] : v[off + k - 1] + 1;
+                int y = x - k;
+                while (x < k1 && y < k2 && same(x, y)) {
+                    x += 1;
+                    y += 1;
+                }
+                v[off + k] = x;
+                if (x >= k1 && y >= k2) {
+                    return d;
+                }
+            }
+        }
     }
 
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
+    /** Append to OUT the pairs matched by patience diff in items A0 .. A1
+     *  - 1 of the first sequence and B0 .. B1 - 1 of the second: the
+     *  longest run, in order in both, of items that occur exactly once in
+     *  each range, with the gaps between them matched in the same way,
+     *  and ranges with no such item matched by myers. */
+    private void patience(int a0, int a1, int b0, int b1, IntList out) {
+        while (a0 < a1 && b0 < b1 && same(a0, b0)) {
+            out.add(a0, b0);
+            a0 += 1;
+            b0 += 1;
+        }
+        int suffix;
+        suffix = 0;
+        while (a1 - suffix > a0 && b1 - suffix > b0
+               && same(a1 - suffix - 1, b1 - suffix - 1)) {
+            suffix += 1;
+        }
+        a1 -= suffix;
+        b1 -= suffix;
+        if (a0 < a1 && b0 < b1) {
+            int[] anchors = uniqueAnchors(a0, a1, b0, b1);
+            if (anchors.length == 0) {
+                myers(a0, a1, b0, b1, out);
+            } else {
+                int i0 = a0, j0 = b0;
+                for (int k = 0; k < anchors.length; k += 2) {
+                    patience(i0, anchors[k], j0, anchors[k + 1], out);
+                    out.add(anchors[k], anchors[k + 1]);
+                    i0 = anchors[k] + 1;
+                    j0 = anchors[k + 1] + 1;
+                }
+                patience(i0, a1, j0, b1, out);
+            }
+        }
+        for (int k = 0; k < suffix; k += 1) {
+            out.add(a1 + k, b1 + k);
+        }
     }
 
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
+    /** Return, as pairs as for pairs(), a longest sequence of items that
+     *  occur exactly once in each of items A0 .. A1 - 1 of the first
+     *  sequence and B0 .. B1 - 1 of the second, and are in the same order
+     *  in both. */
+    private int[] uniqueAnchors(int a0, int a1, int b0, int b1) {
+        for (int i = a0; i < a1; i += 1) {
+            _count1[_ids1[i]] += 1;
+            _where1[_ids1[i]] = i;
+        }
+        for (int j = b0; j < b1; j += 1) {
+            _count2[_ids2[j]] += 1;
+        }
+        IntList unique = new IntList();
+        for (int j = b0; j < b1; j += 1) {
+            int id = _ids2[j];
+            if (_count1[id] == 1 && _count2[id] == 1) {
+                unique.add(_where1[id], j);
+            }
+        }
+        for (int i = a0; i < a1; i += 1) {
+            _count1[_ids1[i]] = 0;
+        }
+        for (int j = b0; j < b1; j += 1) {
+            _count2[_ids2[j]] = 0;
+        }
+
+        int[] cand = unique.toArray();
+        int n = cand.length / 2;
+        int[] tails = new int[n], back = new int[n];
+        int len;
+        len = 0;
+        for (int k = 0; k < n; k += 1) {
+            int lo = 0, hi = len;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cand[2 * tails[mid]] < cand[2 * k]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            back[k] = lo == 0 ? -1 : tails[lo - 1];
+            tails[lo] = k;
+            len = max(len, lo + 1);
+        }
+        int[] result = new int[2 * len];
+        for (int k = len == 0 ? -1 : tails[len - 1], r = len - 1; k >= 0;
+             k = back[k], r -= 1) {
+            result[2 * r] = cand[2 * k];
+            result[2 * r + 1] = cand[2 * k + 1];
+        }
+        return result;
+    }
+
+    /** A growable array of ints. */
+    private static class IntList {
+        /** Append X. */
+        void add(int x) {
+            if (_size == _data.length) {
+                _data = Arrays.copyOf(_data, 2 * _size + 16);
+            }
+            _data[_size] = x;
+            _size += 1;
+        }
+
+        /** Append X and Y. */
+        void add(int x, int y) {
+            add(x);
+            add(y);
+        }
+
+        /** Return the items of this list. */
+        int[] toArray() {
+            return Arrays.copyOf(_data, _size);
+        }
+
+        /** The items, followed by unused space. */
+        private int[] _data = new int[16];
+        /** Number of items. */
+        private int _size;
     }
 
+    /** Algorithms for matching the sequences. */
+    public enum Algorithm { MYERS, PATIENCE }
+
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** The matched items of the current sequences, as for pairs(), or
+     *  null if not yet computed. */
+    private int[] _pairs;
+
+    /** The ids of the items of the sequences, where interned. */
+    private int[] _ids1, _ids2;
+    /** The distinct items interned so far, by id. */
+    private ArrayList<String> _distinct;
+    /** Hash table of the ids of _distinct, plus one (0 for an empty
+     *  slot).  Its size is a power of 2. */
+    private int[] _slots;
+
+    /** Scratch space for patience, by item id: the number of occurrences
+     *  in the current ranges of either sequence, and the position of the
+     *  last one in the first. */
+    private int[] _count1, _count2, _where1;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** The algorithm used to match the sequences. */
+    private Algorithm _algorithm = Algorithm.MYERS;
 
 }
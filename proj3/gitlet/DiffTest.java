@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of Diff, against a quadratic dynamic-programming reference.
+ *  @author Darren Wang
+ */
+public class DiffTest {
+
+    /** Return the table of the lengths of the longest common
+     *  subsequences of all prefixes of A and B: entry [I][J] is that of
+     *  the first I items of A and the first J of B. */
+    static int[][] llsTable(List<String> a, List<String> b) {
+        int[][] table = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i += 1) {
+            for (int j = 1; j <= b.size(); j += 1) {
+                table[i][j] = a.get(i - 1).equals(b.get(j - 1))
+                    ? table[i - 1][j - 1] + 1
+                    : Math.max(table[i - 1][j], table[i][j - 1]);
+            }
+        }
+        return table;
+    }
+
+    /** Return the result of applying the edit script EDITS, as returned
+     *  by Diff.diffs, to A, taking the added items from B. */
+    static List<String> apply(int[] edits, List<String> a, List<String> b) {
+        List<String> result = new ArrayList<>();
+        int next = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            assertTrue(edits[k] >= next);
+            assertTrue(edits[k + 1] > 0 || edits[k + 3] > 0);
+            result.addAll(a.subList(next, edits[k]));
+            assertEquals(edits[k + 2], result.size());
+            result.addAll(b.subList(edits[k + 2],
+                                    edits[k + 2] + edits[k + 3]));
+            next = edits[k] + edits[k + 1];
+        }
+        result.addAll(a.subList(next, a.size()));
+        return result;
+    }
+
+    /** Check that the common subsequence and the edit script that DIFF
+     *  gives for its sequences are consistent, and return the number of
+     *  items matched. */
+    static int checkMatches(Diff diff) {
+        List<String> a = diff.sequence1(), b = diff.sequence2();
+        int[] common = diff.commonSubsequence();
+        int matched = 0, end1 = 0, end2 = 0;
+        for (int k = 0; k < common.length; k += 3) {
+            assertTrue(common[k] >= end1 && common[k + 1] >= end2);
+            assertTrue(common[k + 2] > 0);
+            for (int n = 0; n < common[k + 2]; n += 1) {
+                assertEquals(a.get(common[k] + n), b.get(common[k + 1] + n));
+            }
+            end1 = common[k] + common[k + 2];
+            end2 = common[k + 1] + common[k + 2];
+            matched += common[k + 2];
+        }
+        assertEquals(b, apply(diff.diffs(), a, b));
+        return matched;
+    }
+
+    /** Check DIFF, set to compare A and B, against the reference.  The
+     *  lengths for prefixes are checked at every STEPth pair of them. */
+    static void check(Diff diff, List<String> a, List<String> b, int step) {
+        diff.setSequences(a, b);
+        int[][] table = llsTable(a, b);
+        assertEquals(table[a.size()][b.size()], diff.lls());
+        assertEquals(table[a.size()][b.size()], checkMatches(diff));
+        for (int i = 0; i <= a.size(); i += step) {
+            for (int j = 0; j <= b.size(); j += step) {
+                assertEquals(table[i][j], diff.lls(i, j));
+            }
+        }
+        assertEquals(a.equals(b), diff.sequencesEqual());
+    }
+
+    /** Return a sequence of N items drawn from the first SYMBOLS
+     *  letters by RANDOM. */
+    static List<String> randomLines(Random random, int n, int symbols) {
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < n; k += 1) {
+            result.add(Character.toString('a' + random.nextInt(symbols)));
+        }
+        return result;
+    }
+
+    /** Return A with about one item in EVERY changed, deleted or followed
+     *  by a new one, chosen by RANDOM. */
+    static List<String> edit(Random random, List<String> a, int every) {
+        List<String> result = new ArrayList<>();
+        for (String item : a) {
+            switch (random.nextInt(3 * every)) {
+            case 0 -> result.add(item + "'");
+            case 1 -> { }
+            case 2 -> {
+                result.add(item);
+                result.add("new " + random.nextInt(4));
+            }
+            default -> result.add(item);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void emptyTest() {
+        Diff diff = new Diff();
+        List<String> none = Collections.emptyList(),
+            abc = List.of("a", "b", "c");
+        check(diff, none, none, 1);
+        assertArrayEquals(new int[0], diff.diffs());
+        check(diff, abc, none, 1);
+        assertArrayEquals(new int[] { 0, 3, 0, 0 }, diff.diffs());
+        check(diff, none, abc, 1);
+        assertArrayEquals(new int[] { 0, 0, 0, 3 }, diff.diffs());
+    }
+
+    @Test
+    public void identicalTest() {
+        Diff diff = new Diff();
+        List<String> a = randomLines(new Random(1), 200, 5);
+        check(diff, a, new ArrayList<>(a), 1);
+        assertArrayEquals(new int[] { 0, 0, 200 }, diff.commonSubsequence());
+        assertArrayEquals(new int[0], diff.diffs());
+    }
+
+    @Test
+    public void disjointTest() {
+        Diff diff = new Diff();
+        List<String> a = randomLines(new Random(2), 30, 3),
+            b = randomLines(new Random(3), 40, 3);
+        b.replaceAll(s -> s.toUpperCase());
+        check(diff, a, b, 1);
+        assertEquals(0, diff.lls());
+        assertArrayEquals(new int[] { 0, 30, 0, 40 }, diff.diffs());
+    }
+
+    /** Random sequences over small alphabets, so that most items occur
+     *  many times and there are many longest common subsequences. */
+    @Test
+    public void randomTest() {
+        Random random = new Random(4);
+        Diff diff = new Diff();
+        for (int trial = 0; trial < 500; trial += 1) {
+            int symbols = 1 + random.nextInt(6);
+            check(diff, randomLines(random, random.nextInt(30), symbols),
+                  randomLines(random, random.nextInt(30), symbols), 1);
+        }
+    }
+
+    /** Long sequences with few edits, where the middle snakes of Myers'
+     *  algorithm split the problem many times. */
+    @Test
+    public void fewEditsTest() {
+        Random random = new Random(5);
+        Diff diff = new Diff();
+        for (int trial = 0; trial < 20; trial += 1) {
+            List<String> a = randomLines(random, 300, 8);
+            List<String> b = edit(random, a, 10);
+            check(diff, a, b, 37);
+        }
+    }
+
+    /** Patience diff need not find a longest common subsequence, but its
+     *  matches must be common items, in order, and its edit script must
+     *  still turn one sequence into the other. */
+    @Test
+    public void patienceTest() {
+        Random random = new Random(6);
+        Diff diff = new Diff();
+        diff.setAlgorithm(Diff.Algorithm.PATIENCE);
+        for (int trial = 0; trial < 300; trial += 1) {
+            List<String> a = randomLines(random, random.nextInt(40),
+                                         2 + random.nextInt(20));
+            List<String> b = trial % 2 == 0 ? edit(random, a, 4)
+                : randomLines(random, random.nextInt(40),
+                              2 + random.nextInt(20));
+            diff.setSequences(a, b);
+            int[][] table = llsTable(a, b);
+            assertTrue(checkMatches(diff) <= table[a.size()][b.size()]);
+            assertEquals(table[a.size()][b.size()], diff.lls());
+            assertEquals(a.equals(b), diff.sequencesEqual());
+        }
+    }
+
+    /** Lines whose hash codes are equal, such as "Aa" and "BB", get
+     *  different ids, and equal lines that are different objects get the
+     *  same one. */
+    @Test
+    public void internCollisionTest() {
+        Random random = new Random(7);
+        String[] colliding = { "AaAa", "AaBB", "BBAa", "BBBB" };
+        assertEquals(colliding[0].hashCode(), colliding[3].hashCode());
+        Diff diff = new Diff();
+        for (int trial = 0; trial < 200; trial += 1) {
+            List<String> a = new ArrayList<>(), b = new ArrayList<>();
+            for (int k = random.nextInt(30); k > 0; k -= 1) {
+                a.add(colliding[random.nextInt(colliding.length)]);
+            }
+            for (int k = random.nextInt(30); k > 0; k -= 1) {
+                b.add(new String(colliding[random.nextInt(colliding.length)]));
+            }
+            check(diff, a, b, 1);
+        }
+    }
+
+    /** Many distinct lines between a long common prefix and suffix, so
+     *  that the table of ids grows several times, and a Diff reused for
+     *  other sequences gives what a new one does. */
+    @Test
+    public void internGrowthTest() {
+        List<String> prefix = new ArrayList<>(), a = new ArrayList<>(),
+            b = new ArrayList<>();
+        for (int k = 0; k < 1000; k += 1) {
+            prefix.add("same " + k);
+        }
+        a.addAll(prefix);
+        b.addAll(prefix);
+        for (int k = 0; k < 5000; k += 1) {
+            a.add("line " + k);
+            b.add((k % 7 == 6 ? "changed " : "line ") + k);
+        }
+        a.addAll(prefix);
+        b.addAll(prefix);
+        Diff diff = new Diff();
+        diff.setSequences(a, b);
+        assertEquals(a.size() - 5000 / 7, diff.lls());
+        assertEquals(diff.lls(), checkMatches(diff));
+        assertEquals(5000 / 7, diff.diffs().length / 4);
+
+        List<String> c = randomLines(new Random(8), 60, 4),
+            d = randomLines(new Random(9), 60, 4);
+        check(diff, c, d, 1);
+        Diff fresh = new Diff();
+        fresh.setSequences(c, d);
+        assertArrayEquals(fresh.commonSubsequence(),
+                          diff.commonSubsequence());
+    }
+}
@@ -1,10 +1,33 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import static gitlet.Utils.*;
-import static java.util.Objects.requireNonNull;
 
 /* Files class. For all commands and files that utilized for the
  * file control of the system. */
@@ -16,46 +39,191 @@ public class Files {
         OBJECTS.mkdirs();
         BRANCHES.mkdirs();
         Objects fileList = new Objects("stage");
-        Utils.writeObject(INDEX, fileList);
+        writeStage(INDEX, fileList);
         Objects fileListRm = new Objects("stage");
-        Utils.writeObject(INDEX_REMOVE, fileListRm);
+        writeStage(INDEX_REMOVE, fileListRm);
         writeContents(CURR_HEAD, "master");
     }
 
-    /* Write Objects in the OBJECTS directory.
-     * Save by the first 2 letters of sha1 (same as Git). */
+    /* Write a commit in the OBJECTS directory and make it the head of
+     * the current branch. Save by the first 2 letters of sha1 (same as
+     * Git). Blobs are written by Blob. */
     static void writeObject(Objects object) {
-        String sha1 = sha1(serialize(object));
-        join(OBJECTS, getHeadHash(sha1)).mkdir();
+        Journal transaction = new Journal();
+        writeObject(object, transaction);
+        transaction.commit();
+    }
+
+    /* Write a commit in the OBJECTS directory and add making it the
+     * head of the current branch to TRANSACTION, to be done when the
+     * caller commits it if the branch still points at the commit's
+     * first parent. */
+    static void writeObject(Objects object, Journal transaction) {
+        object.writeTree();
+        String sha1 = sha1(Codec.encode(object));
         File file = getObjectsFile(sha1);
 
-        if (object.getType().equals("commit")) {
-            String currBranch
-                    = Utils.readContentsAsString(CURR_HEAD);
-            writeHead(currBranch);
-            updateBranchHead(currBranch, sha1);
-            Utils.writeObject(file, object);
-        } else {
-            if (writeStagedToIndex(sha1, object.getFileName())) {
-                Utils.writeObject(file, object);
+        String currBranch
+                = Utils.readContentsAsString(CURR_HEAD);
+        writeLooseObject(file, sha1, object);
+        CommitGraph.get().add(sha1, object);
+        MessageIndex.get().add(sha1, object);
+        List<String> parents = object.getParents();
+        transaction.update(join(BRANCHES, currBranch),
+                           parents.isEmpty() ? null : parents.get(0), sha1);
+    }
+
+    /* Clear the staging areas STAGE and REMOVESTAGE, and add writing
+     * them to TRANSACTION. */
+    static void clearStages(Objects stage, Objects removeStage,
+                            Journal transaction) {
+        stage.index.clear();
+        removeStage.index.clear();
+        transaction.write(INDEX_REMOVE, Codec.encode(removeStage));
+        transaction.write(INDEX, Codec.encode(stage));
+        ObjectCache.putStage(INDEX_REMOVE, removeStage);
+        ObjectCache.putStage(INDEX, stage);
+    }
+
+    /* Write OBJECT to its loose FILE, unless the object with that
+     * SHA1 is already stored, loose or packed. */
+    static void writeLooseObject(File file, String sha1, Objects object) {
+        if (hasObject(sha1)) {
+            return;
+        }
+        file.getParentFile().mkdir();
+        writeContents(file, Codec.encode(object));
+    }
+
+    /* Read the staging area stored in FILE, at most once per
+     * command. */
+    static Objects readStage(File file) {
+        Objects stage = ObjectCache.stage(file);
+        if (stage != null) {
+            return stage;
+        }
+        stage = Codec.decode(readContents(file));
+        if (stage.cache == null) {
+            stage.cache = new HashMap<>();
+        }
+        cacheStage(file, stage);
+        return stage;
+    }
+
+    /* Note that FILE, just read or written, holds STAGE, whose stat
+     * cache is as new as FILE. */
+    private static void cacheStage(File file, Objects stage) {
+        try {
+            stage.cacheTime = java.nio.file.Files
+                .getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            stage.cacheTime = 0;
+        }
+        ObjectCache.putStage(file, stage);
+    }
+
+    /* Get the sha1 of the blob for the working file FILE. Trusts the
+     * stat cache of STAGE when FILE has the size, mtime and inode of its
+     * entry there, and hashes FILE and refreshes the entry otherwise. */
+    static String hashWorkingFile(String file, Objects stage) {
+        Index entry = hashEntry(file, stage);
+        if (stage.cache.put(file, entry) != entry) {
+            stage.cacheChanged = true;
+        }
+        return entry.getSha1();
+    }
+
+    /* Get the sha1s of the blobs for those of the working FILES that
+     * exist, by file name, as hashWorkingFile would. The files are
+     * statted and hashed concurrently on THREADS threads, and the stat
+     * cache of STAGE is refreshed afterwards, on this thread. */
+    static Map<String, String> hashWorkingFiles(Collection<String> files,
+                                                Objects stage) {
+        List<Index> entries = inParallel(
+            files.stream().filter(file -> join(file).isFile()).toList(),
+            file -> hashEntry(file, stage), "scan working files");
+
+        Map<String, String> result = new HashMap<>();
+        for (Index entry : entries) {
+            result.put(entry.getFileName(), entry.getSha1());
+            if (stage.cache.put(entry.getFileName(), entry) != entry) {
+                stage.cacheChanged = true;
             }
         }
+        return result;
     }
 
-    /* Write the files that wait for staging into the INDEX file. */
-    static boolean writeStagedToIndex(String sha1, String filename) {
-        Objects fileList;
-        fileList = readObject(INDEX, Objects.class);
+    /* Apply ACTION to each of FILES on up to THREADS threads, and get
+     * the results in order. A failure is reported as being unable to
+     * do WHAT. */
+    static <T> List<T> inParallel(List<String> files,
+                                  Function<String, T> action, String what) {
+        if (threads <= 1 || files.size() <= 1) {
+            return files.stream().map(action).toList();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> files.parallelStream().map(action)
+                               .toList()).get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("Cannot %s: %s", what, excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-        if (fileList.index.containsKey(filename)) {
-            if (sha1.equals(fileList.index.get(filename).getSha1())) {
+    /* Get the stat cache entry for the working file FILE: its entry in
+     * STAGE if FILE still has the recorded size, mtime and inode, and a
+     * fresh one, made by hashing FILE, otherwise. Leaves STAGE alone,
+     * so that it may be called from many threads. */
+    private static Index hashEntry(String file, Objects stage) {
+        File working = join(file);
+        Index stat = statOf(working);
+        Index cached = stage.cache.get(file);
+        if (cached != null && cached.sameStat(stat)
+                && stat.getMtime() < stage.cacheTime) {
+            return cached;
+        }
+        return new Index(Blob.hash(working), file, stat.getSize(),
+                         stat.getMtime(), stat.getInode());
+    }
+
+    /* Get the size, mtime and inode of FILE as a stat cache entry
+     * without a sha1. */
+    static Index statOf(File file) {
+        Path path = file.toPath();
+        try {
+            Map<String, Object> attrs = java.nio.file.Files
+                .readAttributes(path, "unix:size,lastModifiedTime,ino");
+            return new Index(null, file.getPath(), (Long) attrs.get("size"),
+                    ((FileTime) attrs.get("lastModifiedTime"))
+                        .to(TimeUnit.NANOSECONDS),
+                    (Long) attrs.get("ino"));
+        } catch (UnsupportedOperationException excp) {
+            return new Index(null, file.getPath(), file.length(),
+                             file.lastModified() * 1000000, 0);
+        } catch (IOException excp) {
+            throw error("Cannot stat %s.", file);
+        }
+    }
+
+    /* Write the staging area STAGE to FILE. */
+    static void writeStage(File file, Objects stage) {
+        writeContents(file, Codec.encode(stage));
+        cacheStage(file, stage);
+    }
+
+    /* Stage FILE, whose blob is SHA1, in the staging area STAGE, unless
+     * it is already staged with that blob. True iff it was staged. */
+    static boolean stageFile(Objects stage, String sha1, String filename) {
+        if (stage.index.containsKey(filename)) {
+            if (sha1.equals(stage.index.get(filename).getSha1())) {
                 return false;
             }
         }
 
         Index updated = new Index(sha1, filename);
-        fileList.index.put(filename, updated);
-        Utils.writeObject(INDEX, fileList);
+        stage.index.put(filename, updated);
         return true;
     }
 
@@ -72,33 +240,138 @@ public class Files {
     /* Put the content of given blob into a new one.
      * For checkout use. */
     static void updateRepoFile(File newBlobLoc, String blobHash) {
-        File repo = getObjectsFile(blobHash);
-        String content = Utils.readObject(repo, Objects.class).getContent();
-        Utils.writeContents(newBlobLoc, content);
-    }
-
-    /* For updating the stage of removal, INDEX_REMOVE.
-     * Utilized for command rm. */
-    static void updateRemoveStage(Objects removeBlob) {
-        File currHead = getObjectsFile(getCurrHead());
-        Objects currHeadBlob = readObject(currHead, Objects.class);
-        Objects stage = readObject(INDEX, Objects.class);
-        String removeSha1 = sha1(serialize(removeBlob));
-        if (currHeadBlob.index.containsKey(removeBlob.getFileName())) {
-            Objects removeStage = readObject(INDEX_REMOVE, Objects.class);
-            if (removeStage == null) {
-                removeStage = new Objects("stage");
-            }
-            Index entry = new Index(removeSha1, removeBlob.getFileName());
-            removeStage.index.put(removeBlob.getFileName(), entry);
-            Utils.writeObject(INDEX_REMOVE, removeStage);
-            restrictedDelete(new File(removeBlob.getFileName()));
-        } else if (stage.index.containsKey(removeBlob.getFileName())) {
-            stage.index.remove(removeBlob.getFileName());
-            Utils.writeObject(INDEX, stage);
-        } else {
-            System.out.println("No reason to remove the file.");
+        newBlobLoc.getAbsoluteFile().getParentFile().mkdirs();
+        Blob.copyTo(blobHash, newBlobLoc);
+    }
+
+    /* Bring the working tree from commit FROM to commit TO, touching
+     * only the files that differ between the two, the files of FROM that
+     * the working tree has changed, and the paths in EXTRA. Each is
+     * written from TO, or deleted if TO lacks it. Deletions come first,
+     * then the writes run on up to THREADS threads, and the stat cache
+     * of STAGE learns the files written, so that they are not hashed
+     * again. */
+    static void switchTree(Objects from, Objects to,
+                           Collection<String> extra, Objects stage) {
+        SortedMap<String, String> changes = changedFiles(from, to);
+        Map<String, Index> tracked = from.files();
+        Map<String, String> hashes = hashWorkingFiles(tracked.keySet(),
+                                                      stage);
+        List<String> refresh = new ArrayList<>(extra);
+        for (Map.Entry<String, Index> entry : tracked.entrySet()) {
+            String path = entry.getKey();
+            if (!entry.getValue().getSha1().equals(hashes.get(path))) {
+                refresh.add(path);
+            }
         }
+        for (String path : refresh) {
+            if (!changes.containsKey(path)) {
+                Index target = to.getFile(path);
+                changes.put(path, target == null ? null : target.getSha1());
+            }
+        }
+
+        List<String> writes = new ArrayList<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deleteWorkingFile(change.getKey());
+            } else {
+                writes.add(change.getKey());
+            }
+        }
+        Pack.index();
+        List<Index> written = inParallel(writes, path -> {
+            File file = join(path);
+            updateRepoFile(file, changes.get(path));
+            Index stat = statOf(file);
+            return new Index(changes.get(path), path, stat.getSize(),
+                             stat.getMtime(), stat.getInode());
+        }, "check out files");
+        for (Index entry : written) {
+            stage.cache.put(entry.getFileName(), entry);
+        }
+        stage.cacheChanged |= !written.isEmpty();
+    }
+
+    /* Get the files that differ between commits FROM and TO, by path,
+     * each mapped to its blob in TO, or to null if TO lacks it. Only the
+     * trees that differ are read. */
+    static SortedMap<String, String> changedFiles(Objects from, Objects to) {
+        if (from.getTree() != null && to.getTree() != null) {
+            return Tree.diff(from.getTree(), to.getTree());
+        }
+        SortedMap<String, String> result = new TreeMap<>();
+        Map<String, Index> before = from.files(), after = to.files();
+        for (Map.Entry<String, Index> entry : after.entrySet()) {
+            Index old = before.get(entry.getKey());
+            if (old == null
+                    || !old.getSha1().equals(entry.getValue().getSha1())) {
+                result.put(entry.getKey(), entry.getValue().getSha1());
+            }
+        }
+        for (String path : before.keySet()) {
+            if (!after.containsKey(path)) {
+                result.put(path, null);
+            }
+        }
+        return result;
+    }
+
+    /* For updating the stage of removal, INDEX_REMOVE, with FILES.
+     * Utilized for command rm. Each staging area is read and written
+     * at most once. */
+    static void updateRemoveStage(Collection<String> files) {
+        Objects currHeadBlob = getCurrHeadCommit();
+        Objects stage = readStage(INDEX);
+        Objects removeStage = readStage(INDEX_REMOVE);
+        boolean staged = false, removed = false;
+        for (String file : files) {
+            if (currHeadBlob.getFile(file) != null) {
+                String removeSha1 = Blob.hash(join(file));
+                Index entry = new Index(removeSha1, file);
+                removeStage.index.put(file, entry);
+                deleteWorkingFile(file);
+                removed = true;
+            } else if (stage.index.containsKey(file)) {
+                stage.index.remove(file);
+                staged = true;
+            } else {
+                System.out.println("No reason to remove the file.");
+            }
+        }
+        if (removed) {
+            writeStage(INDEX_REMOVE, removeStage);
+        }
+        if (staged) {
+            writeStage(INDEX, stage);
+        }
+    }
+
+    /* Get the working files named by SPEC, as given to add: all those
+     * under it if it is a directory, and otherwise those of WORKING
+     * whose paths match it as a glob, or, if it has no "/", whose names
+     * do. */
+    static List<String> matchingFiles(String spec, List<String> working) {
+        List<String> result = new ArrayList<>();
+        if (join(spec).isDirectory()) {
+            String dir = normalizePath(spec);
+            for (String file : working) {
+                if (dir.isEmpty() || file.startsWith(dir + "/")) {
+                    result.add(file);
+                }
+            }
+            return result;
+        }
+        PathMatcher matcher = FileSystems.getDefault()
+            .getPathMatcher("glob:" + spec);
+        boolean byName = !spec.contains("/");
+        for (String file : working) {
+            Path path = Path.of(file);
+            if (matcher.matches(byName ? path.getFileName() : path)) {
+                result.add(file);
+            }
+        }
+        return result;
     }
 
     /* The strategy to save files in this system is to use
@@ -126,10 +399,196 @@ public class Files {
         return join(OBJECTS, getHeadHash(sha1), getBodyHash(sha1));
     }
 
-    /* Get the Object of the given sha1 hash. */
+    /* Get the Object of the given sha1 hash, whether it is stored
+     * as a loose file or in the pack. Null if there is no such object.
+     * The result may be shared through ObjectCache, and must not be
+     * changed. */
     static Objects getObjectsHash(String hash) {
+        if (ObjectCache.get(hash) instanceof Objects cached) {
+            return cached;
+        }
+        byte[] data = readRawObject(hash);
+        if (data == null) {
+            return null;
+        }
+        Objects result = Codec.decode(data);
+        ObjectCache.put(hash, result, data.length);
+        return result;
+    }
+
+    /* Get a private copy of the Object of the given sha1 hash, for a
+     * caller that changes it, as to make the next commit. */
+    static Objects copyObjectsHash(String hash) {
+        byte[] data = readRawObject(hash);
+        return data == null ? null : Codec.decode(data);
+    }
+
+    /* Get the stored bytes of the given sha1 hash, loose or packed.
+     * Null if there is no such object. */
+    static byte[] readRawObject(String hash) {
+        byte[] packed = Pack.read(hash);
+        if (packed != null) {
+            return packed;
+        }
         File obj = getObjectsFile(hash);
-        return readObject(obj, Objects.class);
+        if (!obj.exists()) {
+            return null;
+        }
+        return readContents(obj);
+    }
+
+    /* Get the sha1 of every stored object, packed ones first. */
+    static List<String> allObjectIds() {
+        List<String> ids = new ArrayList<>();
+        PackIndex packed = Pack.index();
+        for (int k = 0; k < packed.size(); k += 1) {
+            ids.add(packed.idAt(k));
+        }
+        for (File loose : Pack.looseObjects()) {
+            ids.add(Pack.objectId(loose));
+        }
+        return ids;
+    }
+
+    /* Re-encode every Java-serialized object left by a repository
+     * written before Codec existed, and point commits, branches and
+     * the staging areas at the new sha1s. Returns the number of
+     * objects rewritten. */
+    static int migrate() {
+        HashMap<String, String> ids = new HashMap<>();
+        HashMap<String, Objects> pending = new HashMap<>();
+        for (String id : allObjectIds()) {
+            ArrayDeque<String> work = new ArrayDeque<>();
+            work.push(id);
+            while (!work.isEmpty()) {
+                String curr = work.peek();
+                if (ids.containsKey(curr)) {
+                    work.pop();
+                    continue;
+                }
+                Objects obj = pending.get(curr);
+                if (obj == null) {
+                    byte[] data = readRawObject(curr);
+                    if (data == null || !Codec.isLegacy(data)) {
+                        ids.put(curr, curr);
+                        continue;
+                    }
+                    obj = Codec.decode(data);
+                    pending.put(curr, obj);
+                }
+                boolean ready = true;
+                for (String ref : obj.referencedIds()) {
+                    if (!ids.containsKey(ref)) {
+                        work.push(ref);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    String newId;
+                    if ("blob".equals(obj.getType())) {
+                        newId = Blob.write(obj.getContent()
+                                           .getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        obj.remapIds(ids);
+                        newId = sha1(Codec.encode(obj));
+                        writeLooseObject(getObjectsFile(newId), newId, obj);
+                    }
+                    ids.put(curr, newId);
+                    pending.remove(curr);
+                    work.pop();
+                }
+            }
+        }
+
+        for (String branch : branchNames()) {
+            String head = getHeadGeneral(branch);
+            updateBranchHead(branch, ids.getOrDefault(head, head));
+        }
+        for (File stageFile : new File[] { INDEX, INDEX_REMOVE }) {
+            Objects stage = readStage(stageFile);
+            stage.remapIds(ids);
+            writeStage(stageFile, stage);
+        }
+        CommitGraph.reset(true);
+
+        int migrated = 0;
+        for (Map.Entry<String, String> entry : ids.entrySet()) {
+            if (!entry.getKey().equals(entry.getValue())) {
+                getObjectsFile(entry.getKey()).delete();
+                migrated += 1;
+            }
+        }
+        return migrated;
+    }
+
+    /* Delete the loose objects that no branch head or staging area
+     * reaches and that are older than GRACE milliseconds, and return
+     * how many there were. Loose objects younger than that are kept,
+     * with everything they reach, since a command may be about to refer
+     * to them, or have read a branch head just before it moved. The
+     * commits deleted leave the commit graph and the message index
+     * first, so that nothing refers to them once they are gone. Stale
+     * temporary files of writes, in Journal.TEMP_DIR (or, from older
+     * versions, among the objects), go too. */
+    static int collectGarbage(long grace) {
+        Reachability objects = new Reachability();
+        for (String branch : branchNames()) {
+            objects.markCommit(getHeadGeneral(branch));
+        }
+        for (File stageFile : new File[] { INDEX, INDEX_REMOVE }) {
+            for (Index entry : readStage(stageFile).index.values()) {
+                objects.markBlob(entry.getSha1());
+            }
+        }
+        long cutoff = System.currentTimeMillis() - grace;
+        for (int k = 0; k < objects.size(); k += 1) {
+            if (objects.isLoose(k) && !objects.isMarked(k)
+                    && getObjectsFile(objects.id(k)).lastModified() > cutoff) {
+                objects.markObject(objects.id(k));
+            }
+        }
+
+        List<String> garbage = new ArrayList<>();
+        for (int k = 0; k < objects.size(); k += 1) {
+            if (objects.isLoose(k) && !objects.isMarked(k)) {
+                garbage.add(objects.id(k));
+            }
+        }
+        Set<String> commits = new HashSet<>();
+        for (String id : garbage) {
+            if (CommitGraph.get().contains(id)) {
+                commits.add(id);
+            }
+        }
+        if (!commits.isEmpty()) {
+            CommitGraph.remove(commits);
+            MessageIndex.remove(commits);
+        }
+        for (String id : garbage) {
+            getObjectsFile(id).delete();
+        }
+        for (File file : Pack.looseObjects()) {
+            if (file.getName().endsWith(".tmp")
+                    && file.lastModified() <= cutoff) {
+                file.delete();
+            }
+        }
+        File[] temps = Journal.TEMP_DIR.listFiles();
+        for (File file : temps == null ? new File[0] : temps) {
+            if (file.lastModified() <= cutoff) {
+                file.delete();
+            }
+        }
+        for (String id : garbage) {
+            getObjectsFile(id).getParentFile().delete();
+        }
+        return garbage.size();
+    }
+
+    /* Return true iff the object of the given sha1 hash is stored,
+     * loose or packed. */
+    static boolean hasObject(String hash) {
+        return Pack.contains(hash) || getObjectsFile(hash).exists();
     }
 
 
@@ -141,8 +600,45 @@ public class Files {
 
     /* Get current commit as an Object. */
     static Objects getCurrHeadCommit() {
-        File commit = getObjectsFile(getCurrHead());
-        return readObject(commit, Objects.class);
+        return getObjectsHash(getCurrHead());
+    }
+
+    /* Return a value that changes whenever FILE is written, replaced
+     * or deleted: its size, time of last change and identity, or null if
+     * it does not exist. Processes that keep what they read of a file,
+     * like the daemon, compare it to know whether they must read the
+     * file again. */
+    static String fingerprint(File file) {
+        try {
+            BasicFileAttributes attrs = java.nio.file.Files.readAttributes(
+                file.toPath(), BasicFileAttributes.class);
+            return attrs.size() + " " + attrs.lastModifiedTime() + " "
+                + attrs.fileKey();
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /* Get the names of the branches, in order. The lock and temporary
+     * files that writes of a branch head leave beside it, if a process
+     * dies while holding them, are not branches. */
+    static List<String> branchNames() {
+        List<String> result = new ArrayList<>();
+        List<String> names = plainFilenamesIn(BRANCHES);
+        if (names != null) {
+            for (String name : names) {
+                if (isBranchName(name)) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /* Return true iff NAME may name a branch: it does not end as the
+     * names of lock and temporary files do. */
+    static boolean isBranchName(String name) {
+        return !name.endsWith(".lock") && !name.endsWith(".tmp");
     }
 
     /* Get the Head as a string of its sha1 for the given
@@ -152,48 +648,73 @@ public class Files {
         return readContentsAsString(branchHead);
     }
 
-    /* Get history of commits under current Branch. Saved as a List. */
-    static List<String> pastCommits(String headHash) {
-        String currHash = readContentsAsString(join(BRANCHES, headHash));
-        List<String> pastCommits = new ArrayList<>();
-        while (!currHash.equals("")) {
-            pastCommits.add(currHash);
-            Objects currCommit = getObjectsHash(currHash);
-            currHash = currCommit.getParent();
-        }
-        return pastCommits;
+    /* Get history of commits under current Branch, newest first. The
+     * walk follows first parents in the commit graph, one step per
+     * commit yielded, and reads no commit object, so a caller reads
+     * only the commits it shows, and one that stops early reads nothing
+     * older. */
+    static Iterable<String> pastCommits(String headHash) {
+        CommitGraph graph = CommitGraph.get();
+        int head =
+            graph.position(readContentsAsString(join(BRANCHES, headHash)));
+        return () -> new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                String result = graph.id(next);
+                next = graph.parent1(next);
+                return result;
+            }
+
+            /* The position of the next commit of the walk, or -1 at its
+             * end. */
+            private int next = head;
+        };
     }
 
     /* Get all modified files and return as a list. */
     static List<String> modifiedFiles() {
-        Objects currHeadCommit = getCurrHeadCommit();
-        Objects stagedContent = readObject(INDEX, Objects.class);
-        Objects unstagedContent = readObject(INDEX_REMOVE, Objects.class);
+        Map<String, Index> currHeadCommit = getCurrHeadCommit().files();
+        Objects stagedContent = readStage(INDEX);
+        Objects unstagedContent = readStage(INDEX_REMOVE);
         List<String> modified = new ArrayList<>();
 
+        List<String> tracked = new ArrayList<>(stagedContent.index.keySet());
+        for (String currCommit : currHeadCommit.keySet()) {
+            if (!stagedContent.index.containsKey(currCommit)) {
+                tracked.add(currCommit);
+            }
+        }
+        Map<String, String> hashes = hashWorkingFiles(tracked, stagedContent);
+
         for (String staged : stagedContent.index.keySet()) {
             String sha1 = stagedContent.index.get(staged).getSha1();
-            String content = readContentsAsString(join(staged));
-            if (!sha1(serialize(new Objects(content, staged))).equals(sha1)) {
+            if (!hashes.containsKey(staged)) {
+                modified.add(staged + " (deleted)");
+            } else if (!hashes.get(staged).equals(sha1)) {
                 modified.add(staged + " (modified)");
             }
         }
 
-        for (String currCommit : currHeadCommit.index.keySet()) {
+        for (String currCommit : currHeadCommit.keySet()) {
             if (stagedContent.index.containsKey(currCommit)) {
                 continue;
             }
 
-            String sha1 = currHeadCommit.index.get(currCommit).getSha1();
-            File commitedFiles = join(currCommit);
-            if (!commitedFiles.exists()) {
+            String sha1 = currHeadCommit.get(currCommit).getSha1();
+            if (!hashes.containsKey(currCommit)) {
                 modified.add(currCommit + " (deleted)");
                 continue;
             }
 
-            String content = readContentsAsString(commitedFiles);
-            if (!sha1(serialize(new Objects(content, currCommit)))
-                    .equals(sha1)) {
+            if (!hashes.get(currCommit).equals(sha1)) {
                 modified.add(currCommit + " (modified)");
             }
         }
@@ -202,21 +723,94 @@ public class Files {
             modified.remove(unstaged + " (deleted)");
         }
 
+        stagedContent.cacheChanged |= stagedContent.cache.keySet().removeIf(
+            file -> !stagedContent.index.containsKey(file)
+                    && !currHeadCommit.containsKey(file));
+        if (stagedContent.cacheChanged) {
+            writeStage(INDEX, stagedContent);
+        }
+
         return modified;
     }
 
+    /* Get the paths of all files of the working tree that are not
+     * ignored (see Ignore), relative to CWD with "/" separators, in
+     * sorted order. Ignored directories are not descended into. */
+    static List<String> workingFiles() {
+        Ignore ignore = new Ignore(CWD);
+        Path root = CWD.toPath();
+        List<String> result = new ArrayList<>();
+        try {
+            java.nio.file.Files.walkFileTree(root,
+                    new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(
+                            Path dir, BasicFileAttributes attrs) {
+                        if (!dir.equals(root) && ignore.ignored(
+                                root.relativize(dir), true)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(
+                            Path file, BasicFileAttributes attrs) {
+                        Path relative = root.relativize(file);
+                        if (attrs.isRegularFile()
+                                && !ignore.ignored(relative, false)) {
+                            result.add(toGitletPath(relative));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        } catch (IOException excp) {
+            throw error("Cannot list working files: %s", excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /* Get the path of FILE, as given on the command line, relative to
+     * CWD with "/" separators, as files are tracked. */
+    static String normalizePath(String file) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        Path path = root.resolve(file).normalize();
+        return toGitletPath(root.relativize(path));
+    }
+
+    /* Get the RELATIVE path with "/" separators. */
+    private static String toGitletPath(Path relative) {
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    /* Delete the working file at PATH, if any, and then the
+     * directories that this leaves empty, up to CWD. */
+    static void deleteWorkingFile(String path) {
+        File file = join(path);
+        if (!file.isFile()) {
+            return;
+        }
+        file.delete();
+        for (int slash = path.lastIndexOf('/'); slash > 0;
+             slash = path.lastIndexOf('/', slash - 1)) {
+            File dir = join(path.substring(0, slash));
+            String[] left = dir.list();
+            if (left == null || left.length > 0 || !dir.delete()) {
+                break;
+            }
+        }
+    }
+
     /* Get all untracked files and return as a list. */
     static List<String> untrackedFiles() {
-        Objects currHeadCommit = getCurrHeadCommit();
-        Objects stagedContent = readObject(INDEX, Objects.class);
-        Objects removedContent = readObject(INDEX_REMOVE, Objects.class);
+        Map<String, Index> currHeadCommit = getCurrHeadCommit().files();
+        Objects stagedContent = readStage(INDEX);
+        Objects removedContent = readStage(INDEX_REMOVE);
         List<String> untracked = new ArrayList<>();
 
-        for (String files : requireNonNull(plainFilenamesIn(CWD))) {
-            if (!currHeadCommit.index.containsKey(files)
-                    && !files.equals(".gitignore")
-                    && !files.equals("Makefile")
-                    && !files.equals("proj3.iml")) {
+        for (String files : workingFiles()) {
+            if (!currHeadCommit.containsKey(files)) {
                 untracked.add(files);
             }
         }
@@ -252,4 +846,8 @@ public class Files {
     /** Recording all branches. */
     static final File BRANCHES = join(REFS, "heads");
 
+    /** Number of threads used to scan and hash the working tree. Set
+     * with the --threads=N option; defaults to one per processor. */
+    static int threads = Runtime.getRuntime().availableProcessors();
+
 }
@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** The paths of the working directory that gitlet leaves alone: the
+ *  repository itself and a few build files, plus whatever the glob
+ *  patterns of the file .gitletignore, one per line, name.  As in Git, a
+ *  pattern without a "/" matches a file or directory of that name at any
+ *  depth, a pattern with one matches paths relative to the working
+ *  directory, a pattern ending in "/" matches only directories, and
+ *  lines that are blank or start with "#" are skipped.  The patterns are
+ *  compiled once into PathMatchers.
+ *  @author Darren Wang
+ */
+class Ignore {
+
+    /** The ignore rules of the working directory DIR. */
+    Ignore(File dir) {
+        for (String pattern : DEFAULTS) {
+            addPattern(pattern);
+        }
+        File file = new File(dir, IGNORE_FILE);
+        if (file.isFile()) {
+            for (String line : readContentsAsString(file).split("\n")) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    addPattern(line);
+                }
+            }
+        }
+    }
+
+    /** Return true iff the working file or directory at PATH, relative
+     *  to the working directory, is ignored.  DIRECTORY tells whether it
+     *  is a directory. */
+    boolean ignored(Path path, boolean directory) {
+        Path name = path.getFileName();
+        for (int k = 0; k < matchers.size(); k += 1) {
+            if (dirOnly.get(k) && !directory) {
+                continue;
+            }
+            if (matchers.get(k).matches(anywhere.get(k) ? name : path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Compile PATTERN and add it to the rules. */
+    private void addPattern(String pattern) {
+        boolean onlyDirs = pattern.endsWith("/");
+        if (onlyDirs) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        FileSystem fs = FileSystems.getDefault();
+        matchers.add(fs.getPathMatcher("glob:" + pattern));
+        anywhere.add(!pattern.contains("/"));
+        dirOnly.add(onlyDirs);
+    }
+
+    /** Name of the file of ignore patterns. */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    /** Patterns that are always ignored. */
+    private static final String[] DEFAULTS = {
+        ".gitlet/", ".gitignore", "Makefile", "proj3.iml"
+    };
+
+    /** The compiled patterns. */
+    private final List<PathMatcher> matchers = new ArrayList<>();
+
+    /** For each pattern, whether it matches names at any depth, and
+     *  whether it matches only directories. */
+    private final List<Boolean> anywhere = new ArrayList<>(),
+        dirOnly = new ArrayList<>();
+}
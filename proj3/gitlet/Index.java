@@ -5,8 +5,18 @@ import java.io.Serializable;
 public class Index implements Serializable {
 
     public Index(String sha1Code, String fileName) {
+        this(sha1Code, fileName, -1, -1, -1);
+    }
+
+    /* An entry of the stat cache: FILENAME had contents SHA1CODE when
+     * it had the given SIZE, MTIME and INODE. */
+    public Index(String sha1Code, String fileName,
+                 long fileSize, long fileMtime, long fileInode) {
         filename = fileName;
         sha1 = sha1Code;
+        size = fileSize;
+        mtime = fileMtime;
+        inode = fileInode;
     }
 
     public String getSha1() {
@@ -17,6 +27,25 @@ public class Index implements Serializable {
         return filename;
     }
 
+    public long getSize() {
+        return size;
+    }
+
+    public long getMtime() {
+        return mtime;
+    }
+
+    public long getInode() {
+        return inode;
+    }
+
+    /* Return true iff this entry records the same size, mtime and
+     * inode as STAT. */
+    public boolean sameStat(Index stat) {
+        return size == stat.size && mtime == stat.mtime
+                && inode == stat.inode;
+    }
+
     /* Return the hashcode of the String filename. */
     @Override
     public int hashCode() {
@@ -39,4 +68,18 @@ public class Index implements Serializable {
 
     /** The Sha1 Hashcode. */
     private final String sha1;
+
+    /** Size of the file, for stat cache entries. */
+    private long size;
+
+    /** Modification time of the file in nanoseconds, for stat cache
+     * entries. */
+    private long mtime;
+
+    /** Inode number of the file, for stat cache entries. */
+    private long inode;
+
+    /** Pinned to the value computed for the original class, so that
+     * Java-serialized objects of old repositories stay readable. */
+    private static final long serialVersionUID = 6033197173930385160L;
 }
@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** Crash safety for the repository.  Every file is written to a
+ *  temporary file that then replaces it by a rename, so that no file is
+ *  ever seen half-written, and is flushed to disk as the durability
+ *  level asks.  A commit changes several files (a branch head and both
+ *  staging areas) after storing its objects, so those writes are made as
+ *  one transaction: they are first recorded in the journal file, which
+ *  is then applied and deleted.  A command that finds a journal left by
+ *  a process that died finishes applying it, while one that died before
+ *  its journal was complete has changed nothing.  The journal is
+ *      MAGIC (4 bytes), COUNT, (PATH, CONTENTS)..., CRC32 (4 bytes)
+ *  in the primitives of Codec, the CRC covering all that precedes it.
+ *  @author Darren Wang
+ */
+class Journal {
+
+    /** How hard writes are pushed to disk. */
+    enum Durability {
+        /** Leave it to the operating system. */
+        NONE,
+        /** Flush everything written at once, before a transaction is
+         *  journaled and before it is forgotten, and at the end of every
+         *  command that takes the lock of the index. */
+        BATCH,
+        /** Flush each file and its directory as it is written. */
+        FULL
+    }
+
+    /** Record that FILE is to be given CONTENTS when this transaction
+     *  commits. */
+    void write(File file, byte[] contents) {
+        files.add(file);
+        data.add(contents);
+    }
+
+    /** Record that FILE is to be given CONTENTS, in UTF-8, when this
+     *  transaction commits. */
+    void write(File file, String contents) {
+        write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Record that the ref FILE is to be made VALUE when this
+     *  transaction commits, provided that it is then still EXPECTED
+     *  (absent if EXPECTED is null). */
+    void update(File file, String expected, String value) {
+        refs.add(file);
+        expectations.add(expected);
+        write(file, value);
+    }
+
+    /** Make all writes of this transaction, or none of them if a ref it
+     *  updates has changed meanwhile.  The refs are locked until the
+     *  writes are done.  Everything written so far, such as the objects
+     *  the transaction refers to, is flushed first. */
+    void commit() {
+        List<Lock> locks = new ArrayList<>();
+        try {
+            for (int k = 0; k < refs.size(); k += 1) {
+                File ref = refs.get(k);
+                locks.add(Lock.acquire(ref));
+                String current = ref.isFile() ? readContentsAsString(ref)
+                    : null;
+                if (!java.util.Objects.equals(current, expectations.get(k))) {
+                    throw error("Cannot update %s: it was changed by"
+                                + " another process.", ref);
+                }
+            }
+            write();
+        } finally {
+            for (Lock lock : locks) {
+                lock.close();
+            }
+        }
+    }
+
+    /** Journal and make all writes of this transaction. */
+    private void write() {
+        sync();
+        Codec.Output out = new Codec.Output();
+        out.write(MAGIC, 0, MAGIC.length);
+        out.writeVarint(files.size());
+        for (int k = 0; k < files.size(); k += 1) {
+            out.writeString(files.get(k).getPath());
+            out.writeData(data.get(k));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out.toByteArray());
+        out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue())
+                  .array(), 0, 4);
+        writeContents(JOURNAL, (Object) out.toByteArray());
+        sync();
+        apply(files, data);
+    }
+
+    /** Finish the transaction of a journal left behind, if it is
+     *  complete, and otherwise drop it.  Return true iff there was a
+     *  transaction to finish. */
+    static boolean recover() {
+        if (!JOURNAL.isFile()) {
+            return false;
+        }
+        byte[] bytes = readContents(JOURNAL);
+        List<File> files = new ArrayList<>();
+        List<byte[]> data = new ArrayList<>();
+        try {
+            int end = bytes.length - 4;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, end);
+            if (end < MAGIC.length
+                    || ByteBuffer.wrap(bytes, end, 4).getInt()
+                       != (int) crc.getValue()
+                    || ByteBuffer.wrap(bytes).getInt()
+                       != ByteBuffer.wrap(MAGIC).getInt()) {
+                JOURNAL.delete();
+                return false;
+            }
+            Codec.Input in = new Codec.Input(bytes, MAGIC.length);
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                files.add(new File(in.readString()));
+                data.add(in.readData());
+            }
+        } catch (RuntimeException excp) {
+            JOURNAL.delete();
+            return false;
+        }
+        apply(files, data);
+        return true;
+    }
+
+    /** Give each of FILES the corresponding DATA, make that durable,
+     *  and delete the journal. */
+    private static void apply(List<File> files, List<byte[]> data) {
+        for (int k = 0; k < files.size(); k += 1) {
+            writeContents(files.get(k), (Object) data.get(k));
+        }
+        sync();
+        JOURNAL.delete();
+    }
+
+    /** Return the temporary file to which FILE's new contents are
+     *  written.  It is unique to this process and this write, so that
+     *  concurrent writers do not overwrite each other's.  For a file of
+     *  the repository it lies in TEMP_DIR, which no command lists as
+     *  branches or working files and which is on the same file system,
+     *  so that a write cut short by a crash leaves nothing behind that
+     *  could be taken for either and gc can find it.  Other files get
+     *  one beside them. */
+    static Path tempFile(File file) {
+        String name = PID + "-" + TEMP_COUNT.incrementAndGet() + ".tmp";
+        if (!REPOSITORY.isDirectory()
+                || !file.toPath().toAbsolutePath().startsWith(ROOT)) {
+            return Path.of(file.getPath() + "." + name);
+        }
+        if (!TEMP_DIR.isDirectory()) {
+            TEMP_DIR.mkdir();
+        }
+        return TEMP_DIR.toPath().resolve(name);
+    }
+
+    /** Flush OUT, the open temporary file of a write, if the durability
+     *  level asks for that now. */
+    static void written(FileChannel out) throws IOException {
+        if (durability == Durability.FULL) {
+            out.force(true);
+        }
+    }
+
+    /** Replace FILE by TMP, its new contents, and flush the directory or
+     *  schedule both to be flushed, as the durability level asks. */
+    static void replace(Path tmp, File file) throws IOException {
+        Path path = file.toPath();
+        java.nio.file.Files.move(tmp, path,
+                                 StandardCopyOption.REPLACE_EXISTING,
+                                 StandardCopyOption.ATOMIC_MOVE);
+        switch (durability) {
+        case FULL -> force(directoryOf(path));
+        case BATCH -> {
+            synchronized (pending) {
+                pending.add(path);
+            }
+        }
+        default -> { }
+        }
+    }
+
+    /** Flush every file written since the last call, and their
+     *  directories, when the durability level is BATCH. */
+    static void sync() {
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            LinkedHashSet<Path> dirs = new LinkedHashSet<>();
+            for (Path path : pending) {
+                force(path);
+                dirs.add(directoryOf(path));
+            }
+            for (Path dir : dirs) {
+                force(dir);
+            }
+            pending.clear();
+        }
+    }
+
+    /** Return the directory holding PATH. */
+    private static Path directoryOf(Path path) {
+        Path parent = path.toAbsolutePath().getParent();
+        return parent == null ? Path.of(".") : parent;
+    }
+
+    /** Flush the file or directory PATH to disk.  Systems that cannot
+     *  open a directory for this are left to make renames durable
+     *  themselves. */
+    private static void force(Path path) {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** The journal of the transaction in progress. */
+    static final File JOURNAL = join(".gitlet", "journal");
+
+    /** Identifies a journal: "GJNL". */
+    private static final byte[] MAGIC = { 0x47, 0x4a, 0x4e, 0x4c };
+
+    /** Directory of the temporary files of writes. */
+    static final File TEMP_DIR = join(".gitlet", "tmp");
+
+    /** The repository, whose files have their temporary files in
+     *  TEMP_DIR. */
+    private static final File REPOSITORY = join(".gitlet");
+
+    /** The working directory, which holds the repository. */
+    private static final Path ROOT = Path.of("").toAbsolutePath();
+
+    /** Id of this process, for temporary file names. */
+    private static final long PID = ProcessHandle.current().pid();
+
+    /** Number of temporary files named by this process. */
+    private static final AtomicLong TEMP_COUNT = new AtomicLong();
+
+    /** Durability level.  Set with the --durability=LEVEL option. */
+    static Durability durability = Durability.BATCH;
+
+    /** Files written and not yet flushed, at level BATCH. */
+    private static final LinkedHashSet<Path> pending = new LinkedHashSet<>();
+
+    /** The refs this transaction updates, and their expected
+     *  contents. */
+    private final List<File> refs = new ArrayList<>();
+
+    /** The contents each ref of REFS must have for this transaction to
+     *  commit. */
+    private final List<String> expectations = new ArrayList<>();
+
+    /** The files this transaction writes. */
+    private final List<File> files = new ArrayList<>();
+
+    /** The contents of the files this transaction writes. */
+    private final List<byte[]> data = new ArrayList<>();
+}
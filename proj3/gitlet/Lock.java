@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** Lock files, as in Git: the lock of FILE is the file FILE.lock, which
+ *  exists while some process holds it, so that one process at a time
+ *  holds it.  Commands that change the repository hold the lock of the
+ *  index for as long as they run, and a ref is also locked while it is
+ *  compared and swapped, so concurrent gitlet processes take turns
+ *  instead of losing each other's updates.  The holder also holds an
+ *  operating-system lock on the file, which goes away with its process,
+ *  so the lock of a process that died is simply taken by the next
+ *  process to try, and no process ever deletes a lock it does not hold.
+ *  Since the holder deletes the file when done, a process may win the
+ *  operating-system lock of a file that is no longer FILE.lock; so a
+ *  winner writes its own TOKEN into the file it locked, and holds the
+ *  lock only if FILE.lock then reads as TOKEN.  The locks of branch
+ *  heads lie among them, so a lock left there by a process that died
+ *  must not be taken for a branch: Files.branchNames leaves out such
+ *  names, and no branch may be given one.
+ *  @author Darren Wang
+ */
+class Lock implements AutoCloseable {
+
+    /** Take the lock of FILE, waiting up to TIMEOUT milliseconds for
+     *  another process to release it. */
+    static Lock acquire(File file) {
+        File lock = new File(file.getPath() + ".lock");
+        byte[] token = (PID + " " + System.nanoTime())
+            .getBytes(StandardCharsets.UTF_8);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (long wait = 1; ; wait = Math.min(2 * wait, MAX_WAIT)) {
+            FileChannel channel = null, check = null;
+            try {
+                channel = FileChannel.open(lock.toPath(), CREATE, READ,
+                                           WRITE);
+                if (tryLock(channel)) {
+                    channel.truncate(0);
+                    channel.write(ByteBuffer.wrap(token), 0);
+                    check = FileChannel.open(lock.toPath(), READ);
+                    if (reads(check, token)) {
+                        return new Lock(lock, channel, check);
+                    }
+                }
+            } catch (NoSuchFileException excp) {
+                /* The lock was released meanwhile: try again. */
+            } catch (IOException excp) {
+                close(check);
+                close(channel);
+                throw error("Cannot create %s: %s", lock, excp.getMessage());
+            }
+            close(check);
+            close(channel);
+            if (System.currentTimeMillis() >= deadline) {
+                throw error("Unable to create '%s': another gitlet process"
+                            + " seems to be running.", lock);
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException excp) {
+                throw error("Interrupted waiting for %s.", lock);
+            }
+        }
+    }
+
+    /** Run ACTION holding the lock of FILE, which is taken for it unless
+     *  this process holds it already.  This is for work that commands
+     *  which do not take the lock of the index, such as log, must do
+     *  under it.  What ACTION writes is flushed, as the durability level
+     *  asks, before the lock is released. */
+    static void runLocked(File file, Runnable action) {
+        if (HELD.contains(new File(file.getPath() + ".lock"))) {
+            action.run();
+            return;
+        }
+        Lock lock = acquire(file);
+        try {
+            action.run();
+            Journal.sync();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /** Release this lock. */
+    @Override
+    public void close() {
+        HELD.remove(file);
+        file.delete();
+        close(check);
+        close(channel);
+    }
+
+    /** A held lock, the file LOCK, open as CHANNEL, which holds the
+     *  operating-system lock, and as CHECK, which was opened by name to
+     *  check that LOCK is the file locked. */
+    private Lock(File lock, FileChannel channel, FileChannel check) {
+        file = lock;
+        this.channel = channel;
+        this.check = check;
+        HELD.add(lock);
+    }
+
+    /** Take the operating-system lock of CHANNEL if no process, this one
+     *  included, holds it, and return true iff it was taken. */
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException excp) {
+            return false;
+        }
+    }
+
+    /** Return true iff CHANNEL holds exactly TOKEN. */
+    private static boolean reads(FileChannel channel, byte[] token)
+        throws IOException {
+        ByteBuffer contents = ByteBuffer.allocate(token.length + 1);
+        while (contents.hasRemaining() && channel.read(contents) >= 0) {
+            continue;
+        }
+        return contents.flip().equals(ByteBuffer.wrap(token));
+    }
+
+    /** Close CHANNEL, if not null, which releases the operating-system
+     *  lock of its file. */
+    private static void close(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            throw error("Cannot release lock: %s", excp.getMessage());
+        }
+    }
+
+    /** The lock files held by this process. */
+    private static final Set<File> HELD = ConcurrentHashMap.newKeySet();
+
+    /** Id of this process. */
+    private static final long PID = ProcessHandle.current().pid();
+
+    /** Longest pause between attempts to take a lock, in milliseconds. */
+    private static final long MAX_WAIT = 50;
+
+    /** How long to wait for a lock, in milliseconds. */
+    private static final long TIMEOUT = 30000;
+
+    /** The lock file. */
+    private final File file;
+
+    /** The lock file, open, holding the operating-system lock. */
+    private final FileChannel channel;
+
+    /** The lock file, open again.  It stays open while the lock is held
+     *  because closing any channel of a file gives up the process's
+     *  operating-system locks on it. */
+    private final FileChannel check;
+}
@@ -0,0 +1,91 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Stress tests of concurrent gitlet processes on one repository.
+ *  @author Darren Wang
+ */
+public class LockTest {
+
+    /** Number of concurrent committers, and commits by each. */
+    static final int COMMITTERS = 8, COMMITS = 5;
+
+    /** Run gitlet with ARGS in DIR, and return its output. */
+    static String gitlet(File dir, String... args)
+        throws IOException, InterruptedException {
+        return UnitTest.run(dir, "gitlet.Main", args);
+    }
+
+    /** Many processes that each add and commit their own files, all at
+     *  once, must not lose any commit or staged file. */
+    @Test
+    public void concurrentCommitsTest() throws Exception {
+        File dir = UnitTest.tempDir();
+        gitlet(dir, "init");
+        List<Thread> committers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int p = 0; p < COMMITTERS; p += 1) {
+            int id = p;
+            committers.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < COMMITS; i += 1) {
+                        String name = "f" + id + "-" + i + ".txt";
+                        Utils.writeContents(new File(dir, name), name);
+                        gitlet(dir, "add", name);
+                        gitlet(dir, "commit", "add " + name);
+                    }
+                } catch (IOException | InterruptedException excp) {
+                    synchronized (failures) {
+                        failures.add(excp);
+                    }
+                }
+            }));
+        }
+        for (Thread committer : committers) {
+            committer.start();
+        }
+        for (Thread committer : committers) {
+            committer.join();
+        }
+        assertTrue(failures.isEmpty());
+
+        String log = gitlet(dir, "log");
+        assertEquals(1 + COMMITTERS * COMMITS,
+                     log.split("\ncommit ", -1).length - 1);
+        String status = gitlet(dir, "status");
+        assertTrue(status.endsWith("=== Untracked Files ===\n\n"));
+        assertTrue(status.contains("=== Staged Files ===\n\n"));
+        assertFalse(new File(dir, ".gitlet/index.lock").exists());
+        assertFalse(new File(dir, ".gitlet/refs/heads/master.lock").exists());
+    }
+
+    /** The lock of a branch head left by a process that died is not a
+     *  branch, and is taken over by the next commit. */
+    @Test
+    public void staleRefLockTest() throws Exception {
+        File dir = UnitTest.tempDir();
+        gitlet(dir, "init");
+        File lock = new File(dir, ".gitlet/refs/heads/master.lock");
+        Utils.writeContents(lock, "99999999 0");
+
+        assertTrue(gitlet(dir, "status")
+                   .startsWith("=== Branches ===\n*master\n\n"));
+        assertEquals("A branch name cannot end in .lock or .tmp.\n",
+                     gitlet(dir, "branch", "other.lock"));
+        assertEquals("No such branch exists.\n",
+                     gitlet(dir, "checkout", "master.lock"));
+        assertEquals("Removed 0 unreachable objects.\n",
+                     gitlet(dir, "gc"));
+        Utils.writeContents(new File(dir, "f.txt"), "f");
+        assertEquals("", gitlet(dir, "add", "f.txt"));
+        assertEquals("", gitlet(dir, "commit", "add f"));
+        assertEquals(3, gitlet(dir, "log").split("\ncommit ", -1).length);
+        assertFalse(lock.exists());
+    }
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/** Which commits log and global-log show: at most COUNT of them, made
+ *  no earlier than SINCE and no later than UNTIL.  Both commands go
+ *  from newer commits to older ones, so a walk stops at the COUNTth
+ *  commit shown or at the first commit older than SINCE, and reads
+ *  nothing beyond it.
+ *  @author Darren Wang
+ */
+class LogRange {
+
+    /** A range of at most COUNT commits made between SINCE and UNTIL,
+     *  in milliseconds since the epoch. */
+    LogRange(int count, long since, long until) {
+        this.count = count;
+        this.since = since;
+        this.until = until;
+    }
+
+    /** Return the range given by the options ARGS[START..]:
+     *      -n COUNT, --since=DATE, --until=DATE
+     *  where each DATE is yyyy-MM-dd or yyyy-MM-dd HH:mm:ss in local
+     *  time.  Return null if an option is invalid. */
+    static LogRange parse(String[] args, int start) {
+        int count = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        for (int k = start; k < args.length; k += 1) {
+            String[] option = args[k].split("=", 2);
+            Long time = option.length == 2 ? parseDate(option[1]) : null;
+            if (args[k].equals("-n") && k + 1 < args.length
+                    && args[k + 1].matches("\\d{1,9}")) {
+                k += 1;
+                count = Integer.parseInt(args[k]);
+            } else if (option[0].equals("--since") && time != null) {
+                since = time;
+            } else if (option[0].equals("--until") && time != null) {
+                until = time;
+            } else {
+                return null;
+            }
+        }
+        return new LogRange(count, since, until);
+    }
+
+    /** Return the time denoted by DATE, in milliseconds, or null if it
+     *  is not a date. */
+    private static Long parseDate(String date) {
+        String pattern = date.length() > DAY.length() ? DAY + " HH:mm:ss"
+            : DAY;
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setLenient(false);
+        try {
+            return format.parse(date).getTime();
+        } catch (ParseException excp) {
+            return null;
+        }
+    }
+
+    /** Return true iff the range has room for no more commits after
+     *  SHOWN have been shown. */
+    boolean full(int shown) {
+        return shown >= count;
+    }
+
+    /** Return true iff this range limits the times of commits. */
+    boolean timed() {
+        return since != Long.MIN_VALUE || until != Long.MAX_VALUE;
+    }
+
+    /** Return true iff a commit made at TIME, and all commits after it
+     *  in the walk, are older than this range. */
+    boolean past(long time) {
+        return time < since;
+    }
+
+    /** Return true iff a commit made at TIME is in this range. */
+    boolean admits(long time) {
+        return since <= time && time <= until;
+    }
+
+    /** The range of all commits. */
+    static final LogRange ALL =
+        new LogRange(Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    /** Pattern of the date part of a DATE. */
+    private static final String DAY = "yyyy-MM-dd";
+
+    /** Largest number of commits shown. */
+    private final int count;
+
+    /** Earliest and latest times of the commits shown. */
+    private final long since, until;
+}
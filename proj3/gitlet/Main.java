@@ -1,5 +1,12 @@
 package gitlet;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
 import static gitlet.Utils.*;
 import static gitlet.Command.*;
 
@@ -11,31 +18,71 @@ public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) {
+        args = parseOptions(args);
+        if (args == null) {
+            return;
+        }
         if (args.length == 0) {
             System.out.println("Please enter a command.");
             return;
         }
+        try {
+            if (READ_ONLY.contains(args[0])
+                    || !join(".gitlet").isDirectory()) {
+                refresh();
+                run(args);
+            } else {
+                Lock lock = Lock.acquire(Files.INDEX);
+                try {
+                    Journal.recover();
+                    refresh();
+                    run(args);
+                    Journal.sync();
+                } finally {
+                    lock.close();
+                }
+            }
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+        if (stats) {
+            System.err.println(ObjectCache.stats());
+        }
+    }
+
+    /** Forget what earlier commands of this process, such as those run by
+     *  the daemon, read of the files that other processes may since have
+     *  changed.  Each is checked against a fingerprint of its file, so
+     *  this costs a few stats. */
+    private static void refresh() {
+        CommitGraph.refresh();
+        MessageIndex.refresh();
+        Pack.refresh();
+    }
+
+    /** Run the command of ARGS. */
+    static void run(String... args) {
+        ObjectCache.forgetStages();
         String cases = args[0];
         switch (cases) {
         case "init" -> initMain();
         case "add" -> {
-            if (validateArg(args, 2)) {
+            if (validateArgs(args, 2)) {
                 addMain(args);
             }
         }
         case "commit" -> commitMain(args);
         case "rm" -> {
-            if (validateArg(args, 2)) {
-                rm(args[1]);
-            }
-        }
-        case "log" -> log();
-        case "global-log" -> globalLog();
-        case "find" -> {
-            if (validateArg(args, 2)) {
-                find(args[1]);
+            if (validateArgs(args, 2)) {
+                List<String> files = new ArrayList<>();
+                for (int k = 1; k < args.length; k += 1) {
+                    files.add(Files.normalizePath(args[k]));
+                }
+                rm(files);
             }
         }
+        case "log", "global-log" -> logMain(args);
+        case "find" -> findMain(args);
         case "status" -> status();
         case "checkout" -> checkoutMain(args);
         case "branch" -> {
@@ -58,10 +105,37 @@ public class Main {
                 merge(args[1]);
             }
         }
+        case "repack" -> repack();
+        case "migrate" -> migrate();
+        case "gc" -> gcMain(args);
         default -> System.out.println("No command with that name exists.");
         }
     }
 
+    /** Apply the options (--NAME=VALUE or --NAME) that precede the
+     *  command in ARGS, and return the rest of ARGS, or null if an
+     *  option is invalid. */
+    static String[] parseOptions(String... args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            String[] option = args[k].split("=", 2);
+            if (option[0].equals("--threads") && option.length == 2
+                    && option[1].matches("[1-9]\\d*")) {
+                Files.threads = Integer.parseInt(option[1]);
+            } else if (option[0].equals("--durability") && option.length == 2
+                    && option[1].matches("none|batch|full")) {
+                Journal.durability = Journal.Durability
+                    .valueOf(option[1].toUpperCase());
+            } else if (args[k].equals("--stats")) {
+                stats = true;
+            } else {
+                System.out.println("Invalid option: " + args[k]);
+                return null;
+            }
+        }
+        return Arrays.copyOfRange(args, k, args.length);
+    }
+
     static void initMain() {
         if (join(".gitlet").exists()) {
             System.out.println("A Gitlet version-control system"
@@ -71,12 +145,27 @@ public class Main {
         init();
     }
 
+    /** Add the files named by ARGS[1..]: plain files, directories,
+     *  whose files are all added, or glob patterns, such as "*.txt". */
     static void addMain(String... args) {
-        if (!join(args[1]).exists()) {
-            System.out.println("File does not exist.");
-            return;
+        TreeSet<String> files = new TreeSet<>();
+        List<String> working = null;
+        for (int k = 1; k < args.length; k += 1) {
+            if (join(args[k]).isFile()) {
+                files.add(Files.normalizePath(args[k]));
+                continue;
+            }
+            if (working == null) {
+                working = Files.workingFiles();
+            }
+            List<String> matched = Files.matchingFiles(args[k], working);
+            if (matched.isEmpty()) {
+                System.out.println("File does not exist.");
+                return;
+            }
+            files.addAll(matched);
         }
-        add(args[1]);
+        add(files);
     }
 
     static void commitMain(String... args) {
@@ -88,11 +177,53 @@ public class Main {
         commit(args[1]);
     }
 
+    /** Show the history of the current branch, or with global-log every
+     *  commit, limited by the options of ARGS (see LogRange.parse). */
+    static void logMain(String... args) {
+        LogRange range = LogRange.parse(args, 1);
+        if (range == null) {
+            System.out.println("Incorrect operands.");
+        } else if (args[0].equals("log")) {
+            log(range);
+        } else {
+            globalLog(range);
+        }
+    }
+
+    /** Find the commits whose messages are ARGS[1], or, with the
+     *  option --prefix or --substring before it, start with or contain
+     *  it. */
+    static void findMain(String... args) {
+        if (args.length == 2) {
+            find(args[1], MessageIndex.Match.EXACT);
+        } else if (args.length == 3 && args[1].equals("--prefix")) {
+            find(args[2], MessageIndex.Match.PREFIX);
+        } else if (args.length == 3 && args[1].equals("--substring")) {
+            find(args[2], MessageIndex.Match.SUBSTRING);
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    /** Collect garbage, keeping the unreachable objects younger than
+     *  the SECONDS of the option --grace=SECONDS, if given, and
+     *  GRACE_DAYS days otherwise. */
+    static void gcMain(String... args) {
+        if (args.length == 1) {
+            gc(TimeUnit.DAYS.toMillis(GRACE_DAYS));
+        } else if (args.length == 2 && args[1].matches("--grace=\\d{1,12}")) {
+            gc(TimeUnit.SECONDS.toMillis(Long.parseLong(args[1]
+                                                        .substring(8))));
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
     static void checkoutMain(String... args) {
         if (args.length == 4) {
-            checkoutPastFile(args[1], args[3]);
+            checkoutPastFile(args[1], Files.normalizePath(args[3]));
         } else if (args.length == 3) {
-            checkoutHeadFile(args[2]);
+            checkoutHeadFile(Files.normalizePath(args[2]));
         } else if (args.length == 2) {
             checkoutBranch(args[1]);
         } else {
@@ -100,6 +231,16 @@ public class Main {
         }
     }
 
+    /** Return true iff ARGS has at least MIN entries, and otherwise
+     *  complain. */
+    public static boolean validateArgs(String[] args, int min) {
+        if (args.length < min) {
+            System.out.println("Incorrect operands.");
+            return false;
+        }
+        return true;
+    }
+
     public static boolean validateArg(String[] args, int req) {
         if (args.length != req) {
             System.out.println("Incorrect operands.");
@@ -108,4 +249,14 @@ public class Main {
         return true;
     }
 
+    /** Days for which gc keeps unreachable objects by default. */
+    static final int GRACE_DAYS = 14;
+
+    /** Commands that do not change the repository, and so do not take
+     *  the lock of the index, which serializes all others. */
+    static final Set<String> READ_ONLY = Set.of("log", "global-log", "find");
+
+    /** True iff the use of the caches is reported after the command.
+     *  Set with the --stats option. */
+    static boolean stats;
 }
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Three-way merges of file contents.  Both sides are compared with
+ *  their merge base by Diff, line by line, and the changes of each side
+ *  are applied to the base.  Changes whose ranges of base lines overlap
+ *  or touch are a conflict, unless they are the same change.  Contents
+ *  are handled as ISO-8859-1 text, which maps every byte to one char, so
+ *  that files that are not text come through unchanged.
+ *  @author Darren Wang
+ */
+class Merge {
+
+    /** Return the merge of OURS and THEIRS, two versions of a file whose
+     *  contents were BASE at their merge base, or null if they conflict.
+     *  An absent file has empty contents. */
+    static byte[] contents(byte[] base, byte[] ours, byte[] theirs) {
+        List<String> lines0 = lines(base), lines1 = lines(ours),
+            lines2 = lines(theirs);
+        Diff diff = new Diff();
+        diff.setSequences(lines0, lines1);
+        int[] hunks1 = diff.diffs();
+        diff.setSequences(lines0, lines2);
+        int[] hunks2 = diff.diffs();
+
+        StringBuilder result = new StringBuilder();
+        int pos = 0;
+        for (int i = 0, j = 0; i < hunks1.length || j < hunks2.length; ) {
+            if (i < hunks1.length && j < hunks2.length
+                && overlap(hunks1, i, hunks2, j)) {
+                if (!same(hunks1, i, lines1, hunks2, j, lines2)) {
+                    return null;
+                }
+                pos = apply(result, lines0, pos, hunks1, i, lines1);
+                i += 4;
+                j += 4;
+            } else if (j >= hunks2.length
+                       || i < hunks1.length && hunks1[i] < hunks2[j]) {
+                pos = apply(result, lines0, pos, hunks1, i, lines1);
+                i += 4;
+            } else {
+                pos = apply(result, lines0, pos, hunks2, j, lines2);
+                j += 4;
+            }
+        }
+        append(result, lines0, pos, lines0.size());
+        return result.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Return the contents of a file in conflict whose versions are OURS
+     *  and THEIRS, each empty if the file is absent on that side. */
+    static byte[] conflict(byte[] ours, byte[] theirs) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.writeBytes("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+        result.writeBytes(ours);
+        result.writeBytes("=======\n".getBytes(StandardCharsets.UTF_8));
+        result.writeBytes(theirs);
+        result.writeBytes(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        return result.toByteArray();
+    }
+
+    /** Return true iff the range of base lines changed by hunk I of
+     *  HUNKS1 overlaps or touches that of hunk J of HUNKS2, in the format
+     *  of Diff.diffs. */
+    private static boolean overlap(int[] hunks1, int i, int[] hunks2, int j) {
+        return hunks1[i] <= hunks2[j] + hunks2[j + 1]
+            && hunks2[j] <= hunks1[i] + hunks1[i + 1];
+    }
+
+    /** Return true iff hunk I of HUNKS1, which inserts lines of LINES1,
+     *  makes the same change as hunk J of HUNKS2, into LINES2. */
+    private static boolean same(int[] hunks1, int i, List<String> lines1,
+                                int[] hunks2, int j, List<String> lines2) {
+        return hunks1[i] == hunks2[j] && hunks1[i + 1] == hunks2[j + 1]
+            && lines1.subList(hunks1[i + 2], hunks1[i + 2] + hunks1[i + 3])
+               .equals(lines2.subList(hunks2[j + 2],
+                                      hunks2[j + 2] + hunks2[j + 3]));
+    }
+
+    /** Append to OUT the lines of BASE from POS up to hunk K of HUNKS,
+     *  then the lines of SIDE that the hunk puts in their place, and
+     *  return the position in BASE after the hunk. */
+    private static int apply(StringBuilder out, List<String> base, int pos,
+                             int[] hunks, int k, List<String> side) {
+        append(out, base, pos, hunks[k]);
+        append(out, side, hunks[k + 2], hunks[k + 2] + hunks[k + 3]);
+        return hunks[k] + hunks[k + 1];
+    }
+
+    /** Append items FROM .. TO - 1 of LINES to OUT. */
+    private static void append(StringBuilder out, List<String> lines,
+                               int from, int to) {
+        for (int k = from; k < to; k += 1) {
+            out.append(lines.get(k));
+        }
+    }
+
+    /** Return DATA split into lines, each with its line terminator. */
+    private static List<String> lines(byte[] data) {
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0;
+             end = text.indexOf('\n', start)) {
+            result.add(text.substring(start, end + 1));
+            start = end + 1;
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+}
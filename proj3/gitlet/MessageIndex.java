@@ -0,0 +1,367 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** The id, timestamp and message of every commit of the repository, in
+ *  the order written, so that find and global-log need not read commit
+ *  objects.  The file is
+ *      MAGIC (4 bytes), VERSION (4 bytes), RECORD...
+ *  where each RECORD is
+ *      SHA1 (20 bytes), TIMESTAMP, MESSAGE
+ *  in the primitives of Codec.  Records are only ever appended, one per
+ *  new commit, and a torn record at the end is dropped.  When read, the
+ *  records are indexed by exact message, and by each token (maximal run
+ *  of letters and digits, in lower case) of their messages.  Commits of
+ *  the commit graph that the file lacks are added whenever it is read,
+ *  and the first time, so are all other commits among the stored
+ *  objects.
+ *  @author Darren Wang
+ */
+class MessageIndex {
+
+    /** Kinds of searches. */
+    enum Match {
+        /** Messages equal to the text. */
+        EXACT,
+        /** Messages that start with the text. */
+        PREFIX,
+        /** Messages that contain the text. */
+        SUBSTRING
+    }
+
+    /** Return the message index of this repository, reading it on first
+     *  use.  The file is only added to under the lock of the index, which
+     *  find and global-log do not otherwise take, so if commits are
+     *  missing it is read again under the lock before they are added. */
+    static MessageIndex get() {
+        if (index == null) {
+            index = load();
+            if (index.missing()) {
+                Lock.runLocked(INDEX, () -> {
+                    index = load();
+                    CommitGraph graph = CommitGraph.get();
+                    for (int k = 0; k < graph.size(); k += 1) {
+                        if (!index.contains(graph.id(k))) {
+                            index.add(graph.id(k),
+                                      getObjectsHash(graph.id(k)));
+                        }
+                    }
+                    if (index.end == 0) {
+                        index.addUnreachable();
+                    }
+                });
+            }
+        }
+        return index;
+    }
+
+    /** Return the index in FILE, empty if there is none. */
+    private static MessageIndex load() {
+        MessageIndex result = new MessageIndex();
+        result.fingerprint = fingerprint(FILE);
+        if (result.fingerprint != null) {
+            result.read();
+        }
+        return result;
+    }
+
+    /** Return true iff this index has no file yet or lacks a commit of
+     *  the commit graph. */
+    private boolean missing() {
+        if (end == 0) {
+            return true;
+        }
+        CommitGraph graph = CommitGraph.get();
+        for (int k = 0; k < graph.size(); k += 1) {
+            if (!contains(graph.id(k))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Add the commits among the stored objects that are missing, such
+     *  as those that no branch reaches and that were made before the
+     *  commit graph. */
+    private void addUnreachable() {
+        for (String id : allObjectIds()) {
+            if (contains(id)) {
+                continue;
+            }
+            byte[] data = readRawObject(id);
+            int tag = Codec.tag(data);
+            if (tag == Codec.COMMIT || tag == Codec.TREE_COMMIT
+                    || Codec.isLegacy(data)) {
+                Objects commit = Codec.decode(data);
+                if ("commit".equals(commit.getType())) {
+                    add(id, commit);
+                }
+            }
+        }
+    }
+
+    /** Forget the index read by this process, and delete the file if
+     *  DISCARD, so that it is rebuilt on next use. */
+    static void reset(boolean discard) {
+        index = null;
+        if (discard) {
+            FILE.delete();
+        }
+    }
+
+    /** Remove the commits IDS from the index file, which is rewritten,
+     *  and forget the index read by this process. */
+    static void remove(Set<String> ids) {
+        if (!FILE.exists()) {
+            return;
+        }
+        MessageIndex old = new MessageIndex();
+        old.read();
+        Codec.Output out = new Codec.Output();
+        out.write(ByteBuffer.allocate(HEADER).putInt(MAGIC)
+                  .putInt(VERSION).array(), 0, HEADER);
+        for (int k = 0; k < old.size(); k += 1) {
+            if (!ids.contains(old.id(k))) {
+                out.writeId(old.id(k));
+                out.writeString(old.timestamp(k));
+                out.writeString(old.message(k));
+            }
+        }
+        writeContents(FILE, out.toByteArray());
+        index = null;
+    }
+
+    /** Forget the index read by this process if another process has
+     *  changed its file since it was last read or written here, as its
+     *  fingerprint shows. */
+    static void refresh() {
+        if (index != null && !java.util.Objects.equals(fingerprint(FILE),
+                                                       index.fingerprint)) {
+            index = null;
+        }
+    }
+
+    /** Return the number of commits indexed. */
+    int size() {
+        return ids.size();
+    }
+
+    /** Return true iff commit ID is indexed. */
+    boolean contains(String id) {
+        return positions.containsKey(id);
+    }
+
+    /** Return the id of the Kth commit written. */
+    String id(int k) {
+        return ids.get(k);
+    }
+
+    /** Return the timestamp of the Kth commit written. */
+    String timestamp(int k) {
+        return timestamps.get(k);
+    }
+
+    /** Return the message of the Kth commit written. */
+    String message(int k) {
+        return messages.get(k);
+    }
+
+    /** Return the ids of the commits whose messages match TEXT as MODE
+     *  asks, in the order they were indexed.  Only the commits that have
+     *  the tokens that TEXT implies are compared with it. */
+    List<String> find(String text, Match mode) {
+        List<String> result = new ArrayList<>();
+        if (mode == Match.EXACT) {
+            for (int k : exact.getOrDefault(text, List.of())) {
+                result.add(ids.get(k));
+            }
+            return result;
+        }
+        for (int k : candidates(text)) {
+            String msg = messages.get(k);
+            if (mode == Match.PREFIX ? msg.startsWith(text)
+                : msg.contains(text)) {
+                result.add(ids.get(k));
+            }
+        }
+        return result;
+    }
+
+    /** Add commit ID, whose object is COMMIT, to this index and its
+     *  file, unless it is already here. */
+    void add(String id, Objects commit) {
+        if (contains(id)) {
+            return;
+        }
+        Codec.Output out = new Codec.Output();
+        if (end == 0) {
+            out.write(ByteBuffer.allocate(HEADER).putInt(MAGIC)
+                      .putInt(VERSION).array(), 0, HEADER);
+        }
+        out.writeId(id);
+        out.writeString(commit.getTimestamp());
+        out.writeString(commit.getMsg());
+        if (!java.util.Objects.equals(fingerprint(FILE), fingerprint)) {
+            throw error("The message index was changed by another process.");
+        }
+        try (FileChannel file = FileChannel.open(FILE.toPath(), CREATE,
+                                                 WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+            for (long pos = end; buf.hasRemaining(); ) {
+                pos += file.write(buf, pos);
+            }
+            file.truncate(end + out.size());
+        } catch (IOException excp) {
+            throw error("Cannot write message index: %s", excp.getMessage());
+        }
+        end += out.size();
+        fingerprint = fingerprint(FILE);
+        append(id, commit.getTimestamp(), commit.getMsg());
+    }
+
+    /** Return the positions of the commits whose messages may contain
+     *  TEXT, in order.  The tokens of TEXT other than its first and last
+     *  are whole tokens of any such message, its last token is a prefix
+     *  of one, and its first a part of one. */
+    private TreeSet<Integer> candidates(String text) {
+        List<String> words = tokens(text);
+        TreeSet<Integer> result = null;
+        for (int w = 0; w < words.size(); w += 1) {
+            String word = words.get(w);
+            TreeSet<Integer> matches = new TreeSet<>();
+            if (w > 0 && w < words.size() - 1) {
+                matches.addAll(postings.getOrDefault(word, List.of()));
+            } else if (w > 0) {
+                SortedMap<String, List<Integer>> prefixed =
+                    postings.subMap(word, word + Character.MAX_VALUE);
+                for (List<Integer> list : prefixed.values()) {
+                    matches.addAll(list);
+                }
+            } else {
+                for (Map.Entry<String, List<Integer>> entry
+                         : postings.entrySet()) {
+                    if (entry.getKey().contains(word)) {
+                        matches.addAll(entry.getValue());
+                    }
+                }
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+        }
+        if (result == null) {
+            result = new TreeSet<>();
+            for (int k = 0; k < ids.size(); k += 1) {
+                result.add(k);
+            }
+        }
+        return result;
+    }
+
+    /** Return the tokens of TEXT, in order: its maximal runs of letters
+     *  and digits, in lower case. */
+    static List<String> tokens(String text) {
+        List<String> result = new ArrayList<>();
+        int start = -1;
+        for (int k = 0; k <= text.length(); k += 1) {
+            boolean inWord = k < text.length()
+                && Character.isLetterOrDigit(text.charAt(k));
+            if (inWord && start < 0) {
+                start = k;
+            } else if (!inWord && start >= 0) {
+                result.add(text.substring(start, k).toLowerCase());
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Load the records of the index file. */
+    private void read() {
+        byte[] bytes = readContents(FILE);
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER || header.getInt() != MAGIC
+                || header.getInt() != VERSION) {
+            return;
+        }
+        Codec.Input in = new Codec.Input(bytes, HEADER);
+        end = HEADER;
+        try {
+            while (in.hasRemaining()) {
+                String id = in.readId();
+                String timestamp = in.readString();
+                String msg = in.readString();
+                append(id, timestamp, msg);
+                end = in.position();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException excp) {
+            return;
+        }
+    }
+
+    /** Add a record to the in-memory index. */
+    private void append(String id, String timestamp, String msg) {
+        int k = ids.size();
+        ids.add(id);
+        timestamps.add(timestamp);
+        messages.add(msg);
+        positions.put(id, k);
+        exact.computeIfAbsent(msg, m -> new ArrayList<>()).add(k);
+        for (String word : new TreeSet<>(tokens(msg))) {
+            postings.computeIfAbsent(word, w -> new ArrayList<>()).add(k);
+        }
+    }
+
+    /** The message index file. */
+    static final File FILE = join(".gitlet", "messages");
+
+    /** Identifies a message index file: "GMSG". */
+    private static final int MAGIC = 0x474d5347;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the first record. */
+    private static final int HEADER = 8;
+
+    /** The index of this repository, once read. */
+    private static MessageIndex index;
+
+    /** Length of the valid part of the file. */
+    private long end;
+
+    /** The fingerprint of the file as last read or written here, or null
+     *  if it did not exist. */
+    private String fingerprint;
+
+    /** Commit ids, timestamps and messages, by position. */
+    private final List<String> ids = new ArrayList<>(),
+        timestamps = new ArrayList<>(), messages = new ArrayList<>();
+
+    /** Position of each commit id. */
+    private final HashMap<String, Integer> positions = new HashMap<>();
+
+    /** Positions of the commits with each message. */
+    private final HashMap<String, List<Integer>> exact = new HashMap<>();
+
+    /** Positions of the commits whose messages have each token. */
+    private final TreeMap<String, List<Integer>> postings = new TreeMap<>();
+}
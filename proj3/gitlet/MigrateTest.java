@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.io.File;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static gitlet.LockTest.gitlet;
+
+/** Tests of the migration of repositories written before Codec.
+ *  @author Darren Wang
+ */
+public class MigrateTest {
+
+    /** Point master of the repository in the current directory at two
+     *  new commits stored as Java-serialized objects, as before Codec:
+     *  an initial commit and a child of it with the files of the current
+     *  head, whose blobs are left as they are. */
+    public static void main(String... args) {
+        Objects head = Files.getCurrHeadCommit();
+        Files.updateBranchHead("master", writeLegacy(new Objects()));
+        head.makeCommit("legacy commit");
+        Files.updateBranchHead("master", writeLegacy(head));
+    }
+
+    /** Store OBJ Java-serialized, and return its sha1. */
+    private static String writeLegacy(Objects obj) {
+        byte[] data = Utils.serialize(obj);
+        String sha1 = Utils.sha1(data);
+        File file = Files.getObjectsFile(sha1);
+        file.getParentFile().mkdir();
+        Utils.writeContents(file, data);
+        return sha1;
+    }
+
+    /** Migration rewrites the legacy commits and moves master to the
+     *  new ones, after which history, files and find work as before,
+     *  and a second migration finds nothing to do. */
+    @Test
+    public void legacyCommitsTest() throws Exception {
+        File dir = UnitTest.tempDir();
+        File f = new File(dir, "f.txt");
+        gitlet(dir, "init");
+        Utils.writeContents(f, "version 1\n");
+        gitlet(dir, "add", "f.txt");
+        gitlet(dir, "commit", "add f.txt");
+        assertEquals("", UnitTest.run(dir, "gitlet.MigrateTest"));
+        String legacyHead = Utils.readContentsAsString(
+            new File(dir, ".gitlet/refs/heads/master"));
+
+        assertEquals("Migrated 2 objects.\n", gitlet(dir, "migrate"));
+        String head = Utils.readContentsAsString(
+            new File(dir, ".gitlet/refs/heads/master"));
+        assertFalse(head.equals(legacyHead));
+        String log = gitlet(dir, "log");
+        assertEquals("commit " + head, log.split("\n")[1]);
+        assertTrue(log.contains("\nlegacy commit\n"));
+        assertTrue(log.contains("\ninitial commit\n"));
+        assertEquals(3, log.split("\ncommit ", -1).length);
+        assertEquals(head + "\n", gitlet(dir, "find", "legacy commit"));
+
+        Utils.writeContents(f, "version 2\n");
+        assertEquals("", gitlet(dir, "checkout", "--", "f.txt"));
+        assertEquals("version 1\n", Utils.readContentsAsString(f));
+        assertEquals("Migrated 0 objects.\n", gitlet(dir, "migrate"));
+    }
+}
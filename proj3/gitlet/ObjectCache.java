@@ -0,0 +1,118 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Caches of what a command reads more than once.  Decoded commits and
+ *  trees are kept by sha1 in least-recently-used order, up to a budget
+ *  of LIMIT stored bytes; since an object never changes, an entry never
+ *  goes stale, and callers must not change the objects they get (see
+ *  Files.copyObjectsHash).  The staging areas are read at most once per
+ *  command, and writeStage keeps the copy here current.
+ *  @author Darren Wang
+ */
+class ObjectCache {
+
+    /** Return the decoded object SHA1, or null if it is not cached. */
+    static Object get(String sha1) {
+        Entry entry = objects.get(sha1);
+        if (entry == null) {
+            objectMisses += 1;
+            return null;
+        }
+        objectHits += 1;
+        return entry.value;
+    }
+
+    /** Cache VALUE, decoded from the BYTES stored bytes of object SHA1,
+     *  evicting the least recently used objects as needed. */
+    static void put(String sha1, Object value, int bytes) {
+        if (bytes > LIMIT) {
+            return;
+        }
+        Entry old = objects.put(sha1, new Entry(value, bytes));
+        size += bytes - (old == null ? 0 : old.bytes);
+        Iterator<Entry> eldest = objects.values().iterator();
+        while (size > LIMIT) {
+            size -= eldest.next().bytes;
+            eldest.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Forget all cached objects. */
+    static void clear() {
+        objects.clear();
+        size = 0;
+    }
+
+    /** Return the staging area read from FILE by this command, or null
+     *  if it has not been read. */
+    static Objects stage(File file) {
+        Objects stage = stages.get(file);
+        if (stage == null) {
+            stageMisses += 1;
+        } else {
+            stageHits += 1;
+        }
+        return stage;
+    }
+
+    /** Record that FILE holds the staging area STAGE. */
+    static void putStage(File file, Objects stage) {
+        stages.put(file, stage);
+    }
+
+    /** Forget the staging areas, as at the start of a command. */
+    static void forgetStages() {
+        stages.clear();
+    }
+
+    /** Return a report of the use of the caches, for --stats. */
+    static String stats() {
+        return String.format("objects: %d hits, %d misses, %d evicted,"
+                             + " %d cached (%d bytes)%n"
+                             + "stages: %d hits, %d misses",
+                             objectHits, objectMisses, evictions,
+                             objects.size(), size, stageHits, stageMisses);
+    }
+
+    /** A cached object and its size. */
+    private static class Entry {
+        /** An entry for VALUE, of BYTES stored bytes. */
+        Entry(Object value, int bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+
+        /** The decoded object. */
+        private final Object value;
+
+        /** Its stored size. */
+        private final int bytes;
+    }
+
+    /** Largest total of stored bytes of the cached objects. */
+    static final int LIMIT = 32 << 20;
+
+    /** The cached objects by sha1, least recently used first. */
+    private static final LinkedHashMap<String, Entry> objects =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total stored bytes of the cached objects. */
+    private static long size;
+
+    /** The staging areas read by this command, by file. */
+    private static final Map<File, Objects> stages = new HashMap<>();
+
+    /** Counts of cache lookups that found and missed an object, and of
+     *  objects evicted. */
+    private static long objectHits, objectMisses, evictions;
+
+    /** Counts of staging-area reads served from and missing the
+     *  cache. */
+    private static long stageHits, stageMisses;
+}
@@ -2,10 +2,15 @@ package gitlet;
 
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import static gitlet.Files.*;
 
 public class Objects implements Serializable {
@@ -28,27 +33,64 @@ public class Objects implements Serializable {
     Objects(String stage) {
         if (stage.equals("stage")) {
             index = new HashMap<>();
+            cache = new HashMap<>();
         }
     }
 
+    /* Apply to the files of this commit the additions of STAGEDFILES
+     * and then the removals of STAGEREMOVE. Only the trees of the
+     * directories they touch are rewritten. */
     public void updateIndex(Objects stagedFiles, Objects stageRemove) {
-        if (!stagedFiles.index.isEmpty()) {
-            for (String file : stagedFiles.index.keySet()) {
-                index.put(file, stagedFiles.index.get(file));
+        TreeMap<String, String> changes = new TreeMap<>();
+        for (String file : stagedFiles.index.keySet()) {
+            changes.put(file, stagedFiles.index.get(file).getSha1());
+        }
+        for (String file : stageRemove.index.keySet()) {
+            changes.put(file, null);
+        }
+        writeTree();
+        tree = Tree.update(tree, changes);
+        if (index != null) {
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                String file = change.getKey();
+                if (change.getValue() == null) {
+                    index.remove(file);
+                } else {
+                    index.put(file, new Index(change.getValue(), file));
+                }
             }
         }
-        if (!stageRemove.index.isEmpty()) {
-            for (String file : stageRemove.index.keySet()) {
-                index.remove(file);
+    }
+
+    /* Give this commit a root tree made from its index, if it has none
+     * yet: it is new, or comes from a repository older than trees. */
+    void writeTree() {
+        if (tree == null) {
+            TreeMap<String, String> all = new TreeMap<>();
+            for (Map.Entry<String, Index> entry : index.entrySet()) {
+                all.put(entry.getKey(), entry.getValue().getSha1());
             }
+            tree = Tree.update(null, all);
+        }
+    }
+
+    /* Get the files of this commit, by path. Reads all its trees on
+     * first use; to look up a few files, use getFile. */
+    Map<String, Index> files() {
+        if (index == null) {
+            index = Tree.flatten(tree);
         }
+        return index;
     }
 
-    /* Create a blob. */
-    Objects(String providedContent, String file) {
-        type = "blob";
-        content = providedContent;
-        fileName = file;
+    /* Get the entry of the file at PATH in this commit, or null if it
+     * has none. Reads only the trees on PATH. */
+    Index getFile(String path) {
+        if (index != null) {
+            return index.get(path);
+        }
+        String sha1 = Tree.lookup(tree, path);
+        return sha1 == null ? null : new Index(sha1, path);
     }
 
     public void makeCommit(String message) {
@@ -63,6 +105,143 @@ public class Objects implements Serializable {
         msg = message;
     }
 
+    /* Make this a commit of merging the commit OTHER into the current
+     * head, which becomes its first parent. */
+    public void makeMergeCommit(String message, String other) {
+        makeCommit(message);
+        parent.add(other);
+    }
+
+    /* Write the fields of this Objects to OUT, in the encoding of
+     * Codec. Index entries are written in path order, so that equal
+     * commits always encode, and hash, the same. */
+    void writeTo(Codec.Output out) {
+        if (type == null) {
+            out.write(Codec.STAGE);
+            writeIndex(out);
+            writeCache(out);
+        } else {
+            out.write(tree == null ? Codec.COMMIT : Codec.TREE_COMMIT);
+            out.writeString(timestamp);
+            out.writeString(msg);
+            out.writeVarint(parent.size());
+            for (String p : parent) {
+                out.writeId(p);
+            }
+            if (tree == null) {
+                writeIndex(out);
+            } else {
+                out.writeId(tree);
+            }
+        }
+    }
+
+    /* Write the index of this Objects to OUT. */
+    private void writeIndex(Codec.Output out) {
+        out.writeVarint(index.size());
+        for (String file : new TreeSet<>(index.keySet())) {
+            out.writeString(file);
+            out.writeId(index.get(file).getSha1());
+        }
+    }
+
+    /* Write the stat cache of this staging area to OUT. */
+    private void writeCache(Codec.Output out) {
+        out.writeVarint(cache.size());
+        for (String file : new TreeSet<>(cache.keySet())) {
+            Index entry = cache.get(file);
+            out.writeString(file);
+            out.writeId(entry.getSha1());
+            out.writeVarint(entry.getSize());
+            out.writeVarint(entry.getMtime());
+            out.writeVarint(entry.getInode());
+        }
+    }
+
+    /* Return the Objects whose fields, as written by writeTo,
+     * are next in IN. */
+    static Objects readFrom(Codec.Input in) {
+        int tag = in.readByte();
+        Objects result = new Objects("stage");
+        switch (tag) {
+        case Codec.STAGE -> {
+            result.readIndex(in);
+            if (in.hasRemaining()) {
+                result.readCache(in);
+            }
+        }
+        case Codec.COMMIT, Codec.TREE_COMMIT -> {
+            result.type = "commit";
+            result.cache = null;
+            result.timestamp = in.readString();
+            result.msg = in.readString();
+            result.parent = new LinkedList<>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                result.parent.add(in.readId());
+            }
+            if (tag == Codec.COMMIT) {
+                result.readIndex(in);
+            } else {
+                result.index = null;
+                result.tree = in.readId();
+            }
+        }
+        default -> throw Utils.error("Unknown object type.");
+        }
+        return result;
+    }
+
+    /* Read the index of this Objects from IN. */
+    private void readIndex(Codec.Input in) {
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String file = in.readString();
+            index.put(file, new Index(in.readId(), file));
+        }
+    }
+
+    /* Return the sha1s this Objects refers to: parents and the tree or
+     * tracked blobs for commits, staged blobs for staging areas. */
+    List<String> referencedIds() {
+        List<String> result = new ArrayList<>();
+        if (parent != null) {
+            result.addAll(parent);
+        }
+        if (tree != null) {
+            result.add(tree);
+        }
+        if (index != null) {
+            for (Index entry : index.values()) {
+                result.add(entry.getSha1());
+            }
+        }
+        return result;
+    }
+
+    /* Replace every sha1 this Objects refers to by its image in IDS,
+     * where there is one. */
+    void remapIds(Map<String, String> ids) {
+        if (parent != null) {
+            parent.replaceAll(p -> ids.getOrDefault(p, p));
+        }
+        if (index != null) {
+            for (Map.Entry<String, Index> entry : index.entrySet()) {
+                String sha1 = entry.getValue().getSha1();
+                entry.setValue(new Index(ids.getOrDefault(sha1, sha1),
+                                         entry.getKey()));
+            }
+        }
+    }
+
+    /* Read the stat cache of this staging area from IN. */
+    private void readCache(Codec.Input in) {
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String file = in.readString();
+            String sha1 = in.readId();
+            cache.put(file, new Index(sha1, file, in.readVarint(),
+                                      in.readVarint(), in.readVarint()));
+        }
+    }
+
     String getType() {
         return type;
     }
@@ -83,6 +262,16 @@ public class Objects implements Serializable {
         return fileName;
     }
 
+    /* Get the root tree of this commit, or null if it is from a
+     * repository older than trees and has none yet. */
+    String getTree() {
+        return tree;
+    }
+
+    List<String> getParents() {
+        return parent;
+    }
+
     String getParent() {
         if (parent.isEmpty()) {
             return "";
@@ -96,19 +285,43 @@ public class Objects implements Serializable {
     /** Timestamp of the Objects. */
     private String timestamp;
 
-    /** Content of the Objects. For Blobs. */
+    /** Content of the Objects. Only for blobs of old repositories,
+     * which were serialized Objects; see Blob. */
     private String content;
 
     /** Message of the Objects. For Commits. */
     private String msg;
 
-    /** File name of the Objects. For Blobs. */
+    /** File name of the Objects. Only for blobs of old repositories. */
     private String fileName;
 
     /** Parent LinkedList of the Objects.
      * To get all past commits of its branch. */
     private LinkedList<String> parent;
 
-    /** Index of the Objects. For files waiting for staging. */
+    /** Root tree of a commit: the snapshot of all its files. Null for
+     * commits of repositories older than trees, which list their files
+     * in the index, and for a new commit until it is written. */
+    private String tree;
+
+    /** Index of the Objects. For files waiting for staging. For
+     * commits, all their files by path; see files(). */
     protected HashMap<String, Index> index;
+
+    /** Stat cache of the staging area: the blob sha1 last computed for
+     * each working file, with the size, mtime and inode it had then.
+     * Only kept in INDEX. */
+    protected HashMap<String, Index> cache;
+
+    /** When the stat cache was last written, in nanoseconds. Entries
+     * for files modified at or after this time are not trusted, since
+     * they may have changed again within the same mtime tick. */
+    transient long cacheTime;
+
+    /** True iff the stat cache changed since it was read. */
+    transient boolean cacheChanged;
+
+    /** Pinned to the value computed for the original class, so that
+     * Java-serialized objects of old repositories stay readable. */
+    private static final long serialVersionUID = 7880638489889354697L;
 }
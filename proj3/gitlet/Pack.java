@@ -0,0 +1,385 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+
+/** The pack: a single append-only file of zlib-compressed objects, plus
+ *  an index from sha1 to offset (see PackIndex).  Blobs may be stored
+ *  as deltas against the previously packed version of the same path.
+ *  Every entry reads
+ *      KIND (1 byte), DEPTH (1 byte), [BASE OFFSET (8 bytes),]
+ *      RAW LENGTH (4 bytes), PACKED LENGTH (4 bytes), DATA
+ *  where DATA is the deflated object when KIND is WHOLE, or the deflated
+ *  delta against the entry at BASE OFFSET when KIND is DELTA.
+ *  @author Darren Wang
+ */
+class Pack {
+
+    /** Return true iff object SHA1 is in the pack. */
+    static boolean contains(String sha1) {
+        return index().position(sha1) >= 0;
+    }
+
+    /** Return the stored bytes of object SHA1, or null if it is not
+     *  in the pack. */
+    static byte[] read(String sha1) {
+        long offset = index().offset(sha1);
+        if (offset < 0) {
+            return null;
+        }
+        try {
+            return readEntry(channel(), offset);
+        } catch (IOException excp) {
+            throw error("Cannot read pack: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the pack, opened once per process.  Synchronized, since
+     *  checkout reads objects from many threads. */
+    private static synchronized FileChannel channel() throws IOException {
+        if (packChannel == null) {
+            packChannel = FileChannel.open(PACK.toPath());
+        }
+        return packChannel;
+    }
+
+    /** Fold every loose object into the pack and delete the loose
+     *  copies.  Objects are appended oldest first, so that each blob
+     *  can be stored as a delta against the last version of its path.
+     *  The reachability bitmaps are then brought up to date.  Returns the
+     *  number of objects packed. */
+    static int repack() {
+        Bitmaps previous = Bitmaps.get();
+        List<File> loose = looseObjects();
+        if (loose.isEmpty()) {
+            Bitmaps.write(previous);
+            return 0;
+        }
+        loose.sort(Comparator.comparingLong(File::lastModified));
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        index().putAll(offsets);
+        HashMap<String, String> paths = readPaths();
+        HashMap<String, String> blobPaths = blobPaths(loose);
+        PACK_DIR.mkdirs();
+
+        int packed = 0;
+        try (RandomAccessFile out = new RandomAccessFile(PACK, "rw")) {
+            for (File file : loose) {
+                String sha1 = objectId(file);
+                if (offsets.containsKey(sha1)) {
+                    continue;
+                }
+                byte[] data = readContents(file);
+                String path = blobPaths.get(sha1);
+                String last = path == null ? null : paths.get(path);
+                Long base = last == null ? null : offsets.get(last);
+                long offset = appendEntry(out, data, base);
+                offsets.put(sha1, offset);
+                if (path != null) {
+                    paths.put(path, sha1);
+                }
+                packed += 1;
+            }
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw error("Cannot write pack: %s", excp.getMessage());
+        }
+
+        writePaths(paths);
+        PackIndex.write(PACK_INDEX, offsets);
+        reset();
+        for (File file : loose) {
+            file.delete();
+            file.getParentFile().delete();
+        }
+        Bitmaps.write(previous);
+        return packed;
+    }
+
+    /** Append DATA to OUT, as a delta against the entry at BASE when that
+     *  is not null and pays off.  Returns the offset of the new entry. */
+    private static long appendEntry(RandomAccessFile out, byte[] data,
+                                    Long base) throws IOException {
+        int depth = 0;
+        byte[] delta = null;
+        if (base != null) {
+            out.seek(base + 1);
+            depth = out.readByte() + 1;
+            if (depth <= MAX_DEPTH) {
+                delta = Delta.create(readEntry(out.getChannel(), base),
+                                     data);
+            }
+        }
+        boolean useDelta = delta != null && delta.length < data.length / 2;
+        byte[] raw = useDelta ? delta : data;
+        byte[] packed = deflate(raw);
+
+        long offset = out.length();
+        out.seek(offset);
+        out.writeByte(useDelta ? DELTA : WHOLE);
+        out.writeByte(useDelta ? depth : 0);
+        if (useDelta) {
+            out.writeLong(base);
+        }
+        out.writeInt(raw.length);
+        out.writeInt(packed.length);
+        out.write(packed);
+        return offset;
+    }
+
+    /** Return the object stored at OFFSET in IN, resolving deltas.
+     *  Uses positional reads only, so IN may be shared. */
+    private static byte[] readEntry(FileChannel in, long offset)
+        throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+        readFully(in, header, offset);
+        header.flip();
+        int kind = header.get();
+        header.get();
+        long base = kind == DELTA ? header.getLong() : -1;
+        int rawLength = header.getInt();
+        ByteBuffer packed = ByteBuffer.allocate(header.getInt());
+        readFully(in, packed, offset + header.position());
+        byte[] raw = inflate(packed.array(), rawLength);
+        if (kind == DELTA) {
+            return Delta.apply(readEntry(in, base), raw);
+        }
+        return raw;
+    }
+
+    /** Fill BUF from IN starting at POSITION, stopping early only at
+     *  the end of IN. */
+    private static void readFully(FileChannel in, ByteBuffer buf,
+                                  long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (in.read(buf, position + buf.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    /** Return the path under which each blob among the LOOSE objects
+     *  is tracked or staged, by sha1.  Blobs do not record their paths,
+     *  so these are read off the loose commits, through their trees, and
+     *  the staging area. */
+    private static HashMap<String, String> blobPaths(List<File> loose) {
+        HashMap<String, String> result = new HashMap<>();
+        List<Objects> sources = new ArrayList<>();
+        sources.add(readStage(INDEX));
+        for (File file : loose) {
+            int tag = Codec.tag(peek(file));
+            if (tag == Codec.BLOB || tag == Codec.TREE
+                    || tag == Codec.CHUNKED) {
+                continue;
+            }
+            Objects obj = Codec.decode(readContents(file));
+            if ("blob".equals(obj.getType())) {
+                result.put(objectId(file), obj.getFileName());
+            } else {
+                sources.add(obj);
+            }
+        }
+        for (Objects source : sources) {
+            Map<String, Index> files = source.getType() == null
+                ? source.index : source.files();
+            for (Index entry : files.values()) {
+                result.put(entry.getSha1(), entry.getFileName());
+            }
+        }
+        return result;
+    }
+
+    /** Return the first few bytes of FILE, enough to tell its tag. */
+    private static byte[] peek(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            ByteBuffer head = ByteBuffer.allocate(4);
+            in.read(head, 0);
+            return head.array();
+        } catch (IOException excp) {
+            throw error("Cannot read %s.", file);
+        }
+    }
+
+    /** Return the sha1 of the LOOSE object file. */
+    static String objectId(File loose) {
+        return loose.getParentFile().getName() + loose.getName();
+    }
+
+    /** Return all loose object files, found in the two-letter fanout
+     *  directories of OBJECTS. */
+    static List<File> looseObjects() {
+        List<File> result = new ArrayList<>();
+        File[] dirs = OBJECTS.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return result;
+        }
+        for (File dir : dirs) {
+            if (dir.getName().length() != 2) {
+                continue;
+            }
+            List<String> names = plainFilenamesIn(dir);
+            if (names != null) {
+                for (String name : names) {
+                    result.add(join(dir, name));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return DATA compressed with zlib. */
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Return the LENGTH bytes that PACKED decompresses to. */
+    private static byte[] inflate(byte[] packed, int length) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(packed);
+        byte[] result = new byte[length];
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                n += inflater.inflate(result, n, length - n);
+            }
+        } catch (DataFormatException excp) {
+            throw error("Corrupt pack entry.");
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** Return the pack index, mapping it on first use. */
+    static PackIndex index() {
+        if (packIndex == null) {
+            indexFingerprint = Files.fingerprint(PACK_INDEX);
+            packIndex = PackIndex.read(PACK_INDEX);
+        }
+        return packIndex;
+    }
+
+    /** Forget the pack index and bitmaps read by this process, so that
+     *  the next lookup reads the current ones, as after another process
+     *  repacks. */
+    static void reset() {
+        packIndex = null;
+        Bitmaps.reset();
+    }
+
+    /** Forget the pack index read by this process, and with it the
+     *  bitmaps, if another process has replaced its file since, as its
+     *  fingerprint shows, or else just the bitmaps if they were
+     *  replaced.  The pack itself is only appended to, so the channel
+     *  open on it stays good. */
+    static void refresh() {
+        if (packIndex != null
+                && !java.util.Objects.equals(Files.fingerprint(PACK_INDEX),
+                                             indexFingerprint)) {
+            reset();
+        } else {
+            Bitmaps.refresh();
+        }
+    }
+
+    /** Return the last packed blob of every path, by path.  These serve
+     *  as the bases for the deltas of the next versions, so a table that
+     *  is missing or in another format is simply empty. */
+    private static HashMap<String, String> readPaths() {
+        HashMap<String, String> paths = new HashMap<>();
+        if (!PACK_PATHS.exists()) {
+            return paths;
+        }
+        byte[] bytes = readContents(PACK_PATHS);
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        if (bytes.length < PATHS_HEADER || header.getInt() != PATHS_MAGIC
+                || header.getInt() != PATHS_VERSION) {
+            return paths;
+        }
+        Codec.Input in = new Codec.Input(bytes, PATHS_HEADER);
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String path = in.readString();
+            paths.put(path, in.readId());
+        }
+        return paths;
+    }
+
+    /** Write PATHS, the last packed blob of every path, to PACK_PATHS. */
+    private static void writePaths(Map<String, String> paths) {
+        Codec.Output out = new Codec.Output();
+        out.write(ByteBuffer.allocate(PATHS_HEADER).putInt(PATHS_MAGIC)
+                  .putInt(PATHS_VERSION).array(), 0, PATHS_HEADER);
+        out.writeVarint(paths.size());
+        for (Map.Entry<String, String> entry : paths.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeId(entry.getValue());
+        }
+        writeContents(PACK_PATHS, (Object) out.toByteArray());
+    }
+
+    /** Directory holding the pack and its index. */
+    static final File PACK_DIR = join(OBJECTS, "pack");
+
+    /** The pack itself. */
+    static final File PACK = join(PACK_DIR, "objects.pack");
+
+    /** The index of the pack. */
+    static final File PACK_INDEX = join(PACK_DIR, "objects.idx");
+
+    /** The last packed blob of each path:
+     *      MAGIC (4 bytes), VERSION (4 bytes), COUNT, (PATH, SHA1)...
+     *  in the primitives of Codec. */
+    static final File PACK_PATHS = join(PACK_DIR, "objects.paths");
+
+    /** Identifies the table of PACK_PATHS: "GPTH". */
+    private static final int PATHS_MAGIC = 0x47505448;
+
+    /** Version of the format of PACK_PATHS. */
+    private static final int PATHS_VERSION = 1;
+
+    /** Bytes before the count of PACK_PATHS. */
+    private static final int PATHS_HEADER = 8;
+
+    /** Entry kinds. */
+    private static final int WHOLE = 1, DELTA = 2;
+
+    /** Largest size of an entry header. */
+    private static final int ENTRY_HEADER = 18;
+
+    /** Longest allowed chain of deltas, bounding the cost of a read. */
+    static final int MAX_DEPTH = 16;
+
+    /** The pack index of this repository, once mapped. */
+    private static PackIndex packIndex;
+
+    /** The fingerprint of the pack index file when it was mapped. */
+    private static String indexFingerprint;
+
+    /** The open pack, shared by all reads. */
+    private static FileChannel packChannel;
+}
@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static gitlet.Utils.*;
+
+/** The index of the pack, laid out like Git's .idx files:
+ *      MAGIC (4 bytes), VERSION (4 bytes),
+ *      FANOUT (256 4-byte counts),
+ *      N sorted 20-byte sha1s,
+ *      N 8-byte pack offsets, in the same order.
+ *  FANOUT[b] is the number of sha1s whose first byte is at most b, so
+ *  the sha1s starting with b are exactly those at positions
+ *  FANOUT[b - 1] .. FANOUT[b] - 1.  The file is read through a
+ *  MappedByteBuffer, so a lookup is a binary search within that range
+ *  and opens no file.
+ *  @author Darren Wang
+ */
+class PackIndex {
+
+    /** An index of no objects. */
+    PackIndex() {
+        buffer = null;
+        size = 0;
+    }
+
+    /** The index mapped from FILE, which must be in the format above. */
+    private PackIndex(MappedByteBuffer mapped) {
+        buffer = mapped;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw error("Corrupt pack index.");
+        }
+        size = fanout(FANOUT_COUNT - 1);
+    }
+
+    /** Return the index stored in FILE, or an empty index if there is
+     *  none. */
+    static PackIndex read(File file) {
+        if (!file.exists()) {
+            return new PackIndex();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return new PackIndex(channel.map(FileChannel.MapMode.READ_ONLY,
+                                             0, channel.size()));
+        } catch (IOException excp) {
+            throw error("Cannot read pack index: %s", excp.getMessage());
+        }
+    }
+
+    /** Write an index of OFFSETS, a map from sha1 to pack offset, to
+     *  FILE.  The new index replaces the old one by a rename, so that
+     *  processes that have the old one mapped are not disturbed. */
+    static void write(File file, SortedMap<String, Long> offsets) {
+        int n = offsets.size();
+        ByteBuffer out = ByteBuffer.allocate(HEADER + FANOUT_COUNT * 4
+                                             + n * (ID_BYTES + 8));
+        out.putInt(MAGIC).putInt(VERSION);
+        int[] fanout = new int[FANOUT_COUNT];
+        for (String sha1 : offsets.keySet()) {
+            fanout[Integer.parseInt(sha1.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int count : fanout) {
+            total += count;
+            out.putInt(total);
+        }
+        for (String sha1 : offsets.keySet()) {
+            out.put(toBytes(sha1));
+        }
+        for (long offset : offsets.values()) {
+            out.putLong(offset);
+        }
+
+        writeContents(file, out.array());
+    }
+
+    /** Return the number of objects in this index. */
+    int size() {
+        return size;
+    }
+
+    /** Return the position of SHA1 in this index, or -1 if it is not
+     *  there. */
+    int position(String sha1) {
+        if (size == 0 || sha1.length() != UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = toBytes(sha1);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1), hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareAt(mid, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the pack offset of SHA1, or -1 if it is not in this
+     *  index. */
+    long offset(String sha1) {
+        int k = position(sha1);
+        return k < 0 ? -1 : offsetAt(k);
+    }
+
+    /** Return the sha1 at position K. */
+    String idAt(int k) {
+        byte[] id = new byte[ID_BYTES];
+        buffer.get(idsStart() + k * ID_BYTES, id);
+        return Codec.toHex(id);
+    }
+
+    /** Return the pack offset of the object at position K. */
+    long offsetAt(int k) {
+        return buffer.getLong(idsStart() + size * ID_BYTES + k * 8);
+    }
+
+    /** Add every entry of this index to OFFSETS. */
+    void putAll(Map<String, Long> offsets) {
+        for (int k = 0; k < size; k += 1) {
+            offsets.put(idAt(k), offsetAt(k));
+        }
+    }
+
+    /** Compare the sha1 at position K to KEY, as unsigned bytes. */
+    private int compareAt(int k, byte[] key) {
+        int base = idsStart() + k * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = Integer.compare(buffer.get(base + i) & 0xff,
+                                    key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return entry B of the fanout table. */
+    private int fanout(int b) {
+        return buffer.getInt(HEADER + b * 4);
+    }
+
+    /** Return the position in the file of the first sha1. */
+    private static int idsStart() {
+        return HEADER + FANOUT_COUNT * 4;
+    }
+
+    /** Return the 20 bytes denoted by the hexadecimal SHA1. */
+    static byte[] toBytes(String sha1) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) (Character.digit(sha1.charAt(2 * i), 16) << 4
+                                | Character.digit(sha1.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
+    /** Identifies an index file: "GIDX". */
+    private static final int MAGIC = 0x47494458;
+
+    /** Version of the index format. */
+    private static final int VERSION = 1;
+
+    /** Bytes before the fanout table. */
+    private static final int HEADER = 8;
+
+    /** Entries in the fanout table. */
+    private static final int FANOUT_COUNT = 256;
+
+    /** Bytes in a binary sha1. */
+    static final int ID_BYTES = 20;
+
+    /** The mapped index file, or null for the empty index. */
+    private final MappedByteBuffer buffer;
+
+    /** Number of objects in this index. */
+    private final int size;
+}
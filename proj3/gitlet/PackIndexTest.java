@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of PackIndex lookups, against a sorted map.
+ *  @author Darren Wang
+ */
+public class PackIndexTest {
+
+    /** Return the sha1 that is the byte FIRST followed by REST repeated
+     *  nineteen times, in hexadecimal. */
+    static String id(String first, String rest) {
+        return first + rest.repeat(PackIndex.ID_BYTES - 1);
+    }
+
+    /** Return a random sha1 drawn from RANDOM. */
+    static String randomId(Random random) {
+        byte[] id = new byte[PackIndex.ID_BYTES];
+        random.nextBytes(id);
+        return Codec.toHex(id);
+    }
+
+    /** Write OFFSETS as an index in a new file, read it back, and check
+     *  that every entry is found where the sorted map puts it. */
+    static PackIndex check(SortedMap<String, Long> offsets)
+        throws Exception {
+        File file = new File(UnitTest.tempDir(), "objects.idx");
+        PackIndex.write(file, offsets);
+        PackIndex index = PackIndex.read(file);
+        assertEquals(offsets.size(), index.size());
+        int k = 0;
+        for (String id : offsets.keySet()) {
+            assertEquals(id, index.idAt(k));
+            assertEquals(k, index.position(id));
+            assertEquals((long) offsets.get(id), index.offset(id));
+            k += 1;
+        }
+        HashMap<String, Long> all = new HashMap<>();
+        index.putAll(all);
+        assertEquals(new HashMap<>(offsets), all);
+        return index;
+    }
+
+    /** Ids at both ends of the fanout table, first bytes 00 and ff, and
+     *  around the middle, where the ranges of the table begin and end. */
+    @Test
+    public void fanoutEdgeTest() throws Exception {
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        long offset = 0;
+        for (String id : List.of(id("00", "00"), id("00", "01"),
+                                 id("00", "ff"), id("7f", "ff"),
+                                 id("80", "00"), id("ff", "00"),
+                                 id("ff", "fe"), id("ff", "ff"))) {
+            offsets.put(id, offset);
+            offset += 1000;
+        }
+        PackIndex index = check(offsets);
+        for (String absent : List.of(id("00", "02"), id("00", "fe"),
+                                     id("01", "00"), id("7f", "fe"),
+                                     id("80", "01"), id("fe", "ff"),
+                                     id("ff", "01"), id("ff", "fd"))) {
+            assertEquals(-1, index.position(absent));
+            assertEquals(-1L, index.offset(absent));
+        }
+        assertEquals(-1, index.position("00"));
+        assertEquals(-1, index.position(id("ff", "ff") + "0"));
+    }
+
+    /** Indexes whose only ids start with 00, or with ff, so that all of
+     *  the fanout table but one range is empty. */
+    @Test
+    public void oneBucketTest() throws Exception {
+        for (String first : List.of("00", "ff")) {
+            TreeMap<String, Long> offsets = new TreeMap<>();
+            offsets.put(id(first, "00"), 8L);
+            offsets.put(id(first, "80"), 16L);
+            offsets.put(id(first, "ff"), 24L);
+            PackIndex index = check(offsets);
+            String other = first.equals("00") ? "ff" : "00";
+            assertEquals(-1, index.position(id(other, "00")));
+            assertEquals(-1, index.position(id(other, "ff")));
+            assertEquals(-1, index.position(id(first, "01")));
+        }
+    }
+
+    /** An index with no entries, written or missing, finds nothing. */
+    @Test
+    public void emptyTest() throws Exception {
+        PackIndex index = check(new TreeMap<>());
+        assertEquals(-1, index.position(id("00", "00")));
+        assertEquals(-1, index.position(id("ff", "ff")));
+        PackIndex missing = PackIndex.read(new File(UnitTest.tempDir(),
+                                                    "objects.idx"));
+        assertEquals(0, missing.size());
+        assertEquals(-1, missing.position(id("ff", "ff")));
+    }
+
+    /** Many random ids, found at their positions, while ids that are
+     *  not there are not found. */
+    @Test
+    public void randomTest() throws Exception {
+        Random random = new Random(1);
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        for (int k = 0; k < 5000; k += 1) {
+            offsets.put(randomId(random), random.nextLong() >>> 1);
+        }
+        PackIndex index = check(offsets);
+        for (int k = 0; k < 5000; k += 1) {
+            String id = randomId(random);
+            assertEquals(offsets.containsKey(id) ? offsets.headMap(id).size()
+                         : -1, index.position(id));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the pack.
+ *  @author Darren Wang
+ */
+public class PackTest {
+
+    /** Number of versions of the file committed before the first repack,
+     *  and after it, before the second. */
+    static final int BEFORE = 2 * Pack.MAX_DEPTH + 8, AFTER = 5;
+
+    /** Return version V of the file: the same lines but one. */
+    static byte[] version(int v) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < 200; k += 1) {
+            result.append(k == v % 200 ? "version " + v : "line " + k)
+                .append("\n");
+        }
+        return result.toString().getBytes();
+    }
+
+    /** In a new repository in the current directory, commit BEFORE
+     *  versions of one file, repack, commit AFTER more and repack again.
+     *  Then print, for each version, the depth of its entry in the pack,
+     *  whether it reads back as written and whether a loose copy is
+     *  left, and then whether checking out the first commit restores
+     *  the first version. */
+    public static void main(String... args) throws IOException {
+        File file = Utils.join("f.txt");
+        List<String> blobs = new ArrayList<>();
+        String first = null;
+        Main.main("init");
+        for (int v = 0; v < BEFORE + AFTER; v += 1) {
+            Utils.writeContents(file, version(v));
+            Main.main("add", "f.txt");
+            Main.main("commit", "version " + v);
+            blobs.add(Blob.hash(file));
+            if (v == 0) {
+                first = Files.getCurrHead();
+            }
+            if (v == BEFORE - 1) {
+                Main.main("repack");
+            }
+        }
+        Main.main("repack");
+        try (RandomAccessFile pack = new RandomAccessFile(Pack.PACK, "r")) {
+            for (int v = 0; v < blobs.size(); v += 1) {
+                pack.seek(Pack.index().offset(blobs.get(v)) + 1);
+                System.out.println(pack.readByte() + " "
+                    + Arrays.equals(version(v), Blob.read(blobs.get(v)))
+                    + " " + Files.getObjectsFile(blobs.get(v)).exists());
+            }
+        }
+        Main.main("checkout", first, "--", "f.txt");
+        System.out.println(Arrays.equals(version(0),
+                                         Utils.readContents(file)));
+    }
+
+    /** Packed versions of a file are deltas in chains of at most
+     *  MAX_DEPTH, which all read back as they were written, from the
+     *  pack alone. */
+    @Test
+    public void deltaChainTest() throws Exception {
+        File dir = UnitTest.tempDir();
+        String[] lines = UnitTest.run(dir, "gitlet.PackTest").split("\n");
+        assertTrue(lines[0].startsWith("Packed "));
+        assertTrue(lines[1].startsWith("Packed "));
+        assertEquals(3 + BEFORE + AFTER, lines.length);
+        int deepest = 0, deltas = 0;
+        for (int v = 0; v < BEFORE + AFTER; v += 1) {
+            String[] entry = lines[2 + v].split(" ");
+            int depth = Integer.parseInt(entry[0]);
+            assertEquals("true", entry[1]);
+            assertEquals("false", entry[2]);
+            assertTrue(depth <= Pack.MAX_DEPTH);
+            deepest = Math.max(deepest, depth);
+            deltas += depth > 0 ? 1 : 0;
+        }
+        assertEquals(Pack.MAX_DEPTH, deepest);
+        assertTrue(deltas >= BEFORE + AFTER - 4);
+        assertEquals("true", lines[lines.length - 1]);
+        assertTrue(new File(dir, Pack.PACK.getPath()).isFile());
+    }
+}
@@ -0,0 +1,316 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+
+/** The stored objects of the repository, numbered, with a mark on each
+ *  one reached so far from the roots given to the mark methods.  Packed
+ *  objects are numbered by their bits in the reachability bitmaps (see
+ *  Bitmaps), and loose objects after them, in sorted order, as listed
+ *  from the two-character fanout directories.  The loose sha1s are kept
+ *  as 20-byte records with a fanout table of their own, like the pack
+ *  index, so that finding a number is a binary search, and the marks
+ *  are a BitSet over the numbers.  Commits and trees are read to find
+ *  what they refer to, but of the blobs only loose ones are opened, to
+ *  find the chunks of the CHUNKED ones; everything a packed object
+ *  refers to was written before it, and so is packed too.  A commit
+ *  that has a bitmap is not read at all: the objects it reaches are
+ *  marked at once from its bitmap.
+ *  @author Darren Wang
+ */
+class Reachability {
+
+    /** The objects stored now, none of them marked. */
+    Reachability() {
+        this(Bitmaps.get());
+    }
+
+    /** The objects stored now, none of them marked, with the packed ones
+     *  numbered as in BITMAPS, whose bitmaps are used. */
+    Reachability(Bitmaps bitmaps) {
+        this.bitmaps = bitmaps;
+        packed = bitmaps.index();
+        listLoose();
+        marks = new BitSet(size());
+    }
+
+    /** Return the number of objects. */
+    int size() {
+        return packed.size() + looseCount;
+    }
+
+    /** Return the number of object SHA1, or -1 if it is not stored. */
+    int position(String sha1) {
+        int k = packed.position(sha1);
+        if (k >= 0) {
+            return bitmaps.rank(k);
+        }
+        k = loosePosition(sha1);
+        return k < 0 ? -1 : packed.size() + k;
+    }
+
+    /** Return the sha1 of object K. */
+    String id(int k) {
+        if (k < packed.size()) {
+            return packed.idAt(bitmaps.position(k));
+        }
+        int start = (k - packed.size()) * ID_BYTES;
+        return Codec.toHex(Arrays.copyOfRange(looseIds, start,
+                                              start + ID_BYTES));
+    }
+
+    /** Return true iff object K is loose. */
+    boolean isLoose(int k) {
+        return k >= packed.size();
+    }
+
+    /** Return true iff object K has been marked. */
+    boolean isMarked(int k) {
+        return marks.get(k);
+    }
+
+    /** Return true iff a loose object has been marked. */
+    boolean marksLoose() {
+        return marks.nextSetBit(packed.size()) >= 0;
+    }
+
+    /** Return the marks as the words of a bitmap, bit K of word K / 64
+     *  being the mark of object K. */
+    long[] markedWords() {
+        return marks.toLongArray();
+    }
+
+    /** Remove every mark. */
+    void clear() {
+        marks.clear();
+    }
+
+    /** Return the number of objects marked. */
+    int markedCount() {
+        return marks.cardinality();
+    }
+
+    /** Mark commit ID and every object it reaches. */
+    void markCommit(String id) {
+        mark(id, COMMIT);
+    }
+
+    /** Mark blob ID and its chunks, if it has any. */
+    void markBlob(String id) {
+        mark(id, BLOB);
+    }
+
+    /** Mark the loose object ID, of any kind, and every object it
+     *  reaches. */
+    void markObject(String id) {
+        mark(id, UNKNOWN);
+    }
+
+    /** Return the number of bytes used by the numbering and the marks,
+     *  apart from the mapped pack index. */
+    long footprint() {
+        return looseIds.length + (long) looseFanout.length * 4
+            + marks.size() / 8 + (long) work.length * 8;
+    }
+
+    /** Mark object ID, which is of kind KIND, and everything it reaches
+     *  that is not yet marked. */
+    private void mark(String id, int kind) {
+        push(id, kind);
+        while (top > 0) {
+            top -= 1;
+            int k = (int) (work[top] >>> 2);
+            visit(k, (int) (work[top] & 3));
+        }
+    }
+
+    /** Push object ID, of kind KIND, if it is stored and not yet
+     *  marked, and mark it. */
+    private void push(String id, int kind) {
+        int k = position(id);
+        if (k < 0 || marks.get(k)) {
+            return;
+        }
+        marks.set(k);
+        if (top == work.length) {
+            work = Arrays.copyOf(work, 2 * work.length);
+        }
+        work[top] = ((long) k << 2) | kind;
+        top += 1;
+    }
+
+    /** Push the objects that object K, of kind KIND, refers to. */
+    private void visit(int k, int kind) {
+        String id = id(k);
+        if (kind == UNKNOWN) {
+            kind = kindOf(id);
+        }
+        switch (kind) {
+        case COMMIT -> {
+            if (!isLoose(k) && bitmaps.has(id)) {
+                bitmaps.addTo(id, marks);
+                return;
+            }
+            Objects commit = getObjectsHash(id);
+            for (String parent : commit.getParents()) {
+                push(parent, COMMIT);
+            }
+            if (commit.getTree() != null) {
+                push(commit.getTree(), TREE);
+            } else {
+                for (Index entry : commit.files().values()) {
+                    push(entry.getSha1(), BLOB);
+                }
+            }
+        }
+        case TREE -> {
+            for (Map.Entry<String, String> entry
+                     : Tree.read(id).entries().entrySet()) {
+                push(entry.getValue(),
+                     entry.getKey().endsWith("/") ? TREE : BLOB);
+            }
+        }
+        default -> {
+            if (isLoose(k) && Codec.tag(peek(id)) == Codec.CHUNKED) {
+                for (String chunk : Codec.decodeChunks(readRawObject(id))) {
+                    push(chunk, BLOB);
+                }
+            }
+        }
+        }
+    }
+
+    /** Return the kind of the loose object ID. */
+    private static int kindOf(String id) {
+        byte[] head = peek(id);
+        int tag = Codec.tag(head);
+        if (tag == Codec.COMMIT || tag == Codec.TREE_COMMIT) {
+            return COMMIT;
+        } else if (tag == Codec.TREE) {
+            return TREE;
+        } else if (Codec.isLegacy(head)
+                   && "commit".equals(getObjectsHash(id).getType())) {
+            return COMMIT;
+        }
+        return BLOB;
+    }
+
+    /** Return the first few bytes of the loose object ID. */
+    private static byte[] peek(String id) {
+        try (FileChannel in = FileChannel.open(getObjectsFile(id)
+                                               .toPath())) {
+            ByteBuffer head = ByteBuffer.allocate(4);
+            in.read(head, 0);
+            return head.array();
+        } catch (IOException excp) {
+            throw error("Cannot read object %s.", id);
+        }
+    }
+
+    /** Return the position of SHA1 among the loose objects, or -1. */
+    private int loosePosition(String sha1) {
+        if (looseCount == 0) {
+            return -1;
+        }
+        byte[] key = PackIndex.toBytes(sha1);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : looseFanout[first - 1];
+        int hi = looseFanout[first] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = Arrays.compareUnsigned(looseIds, mid * ID_BYTES,
+                                           (mid + 1) * ID_BYTES,
+                                           key, 0, ID_BYTES);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Fill in the loose sha1s and their fanout, from the fanout
+     *  directories in order.  Names that are not sha1s, such as the
+     *  temporary files of writes, are skipped. */
+    private void listLoose() {
+        looseFanout = new int[FANOUT_COUNT];
+        looseIds = new byte[0];
+        looseCount = 0;
+        for (int b = 0; b < FANOUT_COUNT; b += 1) {
+            String dir = String.format("%02x", b);
+            List<String> names = plainFilenamesIn(join(OBJECTS, dir));
+            for (String name : names == null ? List.<String>of() : names) {
+                if (name.length() != UID_LENGTH - 2 || !isHex(name)) {
+                    continue;
+                }
+                if ((looseCount + 1) * ID_BYTES > looseIds.length) {
+                    looseIds = Arrays.copyOf(looseIds,
+                                             2 * looseIds.length + ID_BYTES);
+                }
+                System.arraycopy(PackIndex.toBytes(dir + name), 0, looseIds,
+                                 looseCount * ID_BYTES, ID_BYTES);
+                looseCount += 1;
+            }
+            looseFanout[b] = looseCount;
+        }
+        looseIds = Arrays.copyOf(looseIds, looseCount * ID_BYTES);
+    }
+
+    /** Return true iff NAME is all lower-case hexadecimal digits. */
+    private static boolean isHex(String name) {
+        for (int k = 0; k < name.length(); k += 1) {
+            char c = name.charAt(k);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Kinds of objects on the work stack: those known to be commits,
+     *  trees or blobs, and loose objects of unknown kind. */
+    private static final int COMMIT = 0, TREE = 1, BLOB = 2, UNKNOWN = 3;
+
+    /** Bytes in a binary sha1. */
+    private static final int ID_BYTES = PackIndex.ID_BYTES;
+
+    /** Entries in a fanout table. */
+    private static final int FANOUT_COUNT = 256;
+
+    /** The numbering and bitmaps of the packed objects. */
+    private final Bitmaps bitmaps;
+
+    /** The index of the packed objects. */
+    private final PackIndex packed;
+
+    /** The sorted sha1s of the loose objects, ID_BYTES bytes each. */
+    private byte[] looseIds;
+
+    /** Entry B is the number of loose objects whose first byte is at
+     *  most B. */
+    private int[] looseFanout;
+
+    /** Number of loose objects. */
+    private int looseCount;
+
+    /** Bit K is set iff object K is marked. */
+    private final BitSet marks;
+
+    /** Objects marked but not yet visited, each its number times four
+     *  plus its kind. */
+    private long[] work = new long[64];
+
+    /** Number of entries of WORK in use. */
+    private int top;
+}
@@ -0,0 +1,184 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+
+/** A repository generated from a seed, for benchmarks, in the current
+ *  directory: FILES text files of about FILESIZE bytes each, 1000 to a
+ *  directory, added and committed at once; then a history of DEPTH
+ *  commits on master, each editing a few lines of one file in a hundred
+ *  (at least one); and BRANCHES branches, forked from evenly spaced
+ *  commits of that history, each with DEPTH / 10 commits (at least one)
+ *  of its own.  Every choice comes from the seed, so the same parameters
+ *  give the same files, edits, branches and messages, and so the same
+ *  work for each command, though the commit ids differ with the times
+ *  of the commits.
+ *  @author Darren Wang
+ */
+class SyntheticRepo {
+
+    /** A repository of FILES files of about FILESIZE bytes, DEPTH
+     *  commits deep on master, with BRANCHES more branches, generated
+     *  from SEED. */
+    SyntheticRepo(int files, int fileSize, int depth, int branches,
+                  long seed) {
+        this.files = files;
+        this.fileSize = fileSize;
+        this.depth = depth;
+        this.branches = branches;
+        random = new Random(seed);
+    }
+
+    /** Generate this repository in the current directory, which must
+     *  have none, leaving master checked out. */
+    void generate() {
+        Command.init();
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < files; i += 1) {
+            String file = file(i);
+            join(file).getParentFile().mkdirs();
+            writeContents(join(file), contents());
+            all.add(file);
+        }
+        Command.add(all);
+        Command.commit("initial files");
+
+        int forked = 0;
+        for (int d = 0; d < depth; d += 1) {
+            change(message(MASTER, d));
+            while (forked < branches && forkPoint(forked) <= d + 1) {
+                Command.branch(branch(forked));
+                forked += 1;
+            }
+        }
+        for (; forked < branches; forked += 1) {
+            Command.branch(branch(forked));
+        }
+        for (int b = 0; b < branches; b += 1) {
+            Command.checkoutBranch(branch(b));
+            for (int d = 0; d < Math.max(1, depth / 10); d += 1) {
+                change(message(branch(b), d));
+            }
+        }
+        Command.checkoutBranch(MASTER);
+    }
+
+    /** Return the number of master commits after the first before the
+     *  fork of branch B. */
+    private int forkPoint(int b) {
+        return (int) ((long) (b + 1) * depth / (branches + 1));
+    }
+
+    /** Return the path of file I. */
+    static String file(int i) {
+        return "d" + i / FILES_PER_DIR + "/f" + i + ".txt";
+    }
+
+    /** Return the name of branch B. */
+    static String branch(int b) {
+        return "branch" + b;
+    }
+
+    /** Return the message of commit D of BRANCH. */
+    static String message(String branch, int d) {
+        return "change " + d + " on " + branch;
+    }
+
+    /** Return the number of files changed by each commit. */
+    int changesPerCommit() {
+        return Math.max(1, files / 100);
+    }
+
+    /** Edit a few lines of each of changesPerCommit() files, chosen at
+     *  random, add them and commit them with message MSG. */
+    void change(String msg) {
+        List<String> changed = new ArrayList<>();
+        for (int k = 0; k < changesPerCommit(); k += 1) {
+            String file = file(random.nextInt(files));
+            writeContents(join(file),
+                          edit(readContentsAsString(join(file))));
+            changed.add(file);
+        }
+        Command.add(changed);
+        Command.commit(msg);
+    }
+
+    /** Return new text of about fileSize bytes: lines of a few words. */
+    String contents() {
+        StringBuilder result = new StringBuilder();
+        while (result.length() < fileSize) {
+            result.append(line()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return TEXT with EDITS random lines replaced, inserted or
+     *  deleted, in turn. */
+    String edit(String text) {
+        List<String> lines =
+            new ArrayList<>(Arrays.asList(text.split("\n")));
+        for (int i = 0; i < EDITS; i += 1) {
+            int k = random.nextInt(lines.size());
+            switch (i % 3) {
+            case 0 -> lines.set(k, line());
+            case 1 -> lines.add(k, line());
+            default -> {
+                if (lines.size() > 1) {
+                    lines.remove(k);
+                }
+            }
+            }
+        }
+        return String.join("\n", lines) + "\n";
+    }
+
+    /** Return a random line of one to eight words. */
+    private String line() {
+        StringBuilder result = new StringBuilder();
+        int words = 1 + random.nextInt(8);
+        for (int w = 0; w < words; w += 1) {
+            if (w > 0) {
+                result.append(' ');
+            }
+            result.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return result.toString();
+    }
+
+    /** Name of the main branch. */
+    static final String MASTER = "master";
+
+    /** Files in each directory. */
+    static final int FILES_PER_DIR = 1000;
+
+    /** Lines edited in a changed file. */
+    static final int EDITS = 3;
+
+    /** The words of the generated text, a quarter of which are
+     *  punctuation, so that lines repeat as they do in code. */
+    private static final String[] WORDS = {
+        "int", "return", "if", "else", "for", "while", "new", "static",
+        "void", "class", "String", "List", "result", "value", "index",
+        "count", "}", "{", ";", "(", ")", "=", "+=", "null",
+    };
+
+    /** Number of files. */
+    final int files;
+
+    /** Approximate size of each file, in bytes. */
+    final int fileSize;
+
+    /** Number of commits on master after the first. */
+    final int depth;
+
+    /** Number of branches besides master. */
+    final int branches;
+
+    /** Source of every random choice. */
+    private final Random random;
+}
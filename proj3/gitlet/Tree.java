@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+import static gitlet.Files.*;
+
+/** Trees: snapshots of one directory, as a sorted map from the names of
+ *  its entries to their sha1s.  The names of subdirectories end in "/"
+ *  and map to trees, and other names map to blobs.  A commit refers to
+ *  the tree of the whole working directory, so a change to one file
+ *  writes new trees only for the directories on its path, and every
+ *  other tree is shared with the parent commit.
+ *  @author Darren Wang
+ */
+class Tree {
+
+    /** An empty tree. */
+    Tree() {
+        entries = new TreeMap<>();
+    }
+
+    /** Return the tree stored as SHA1, which may be shared through
+     *  ObjectCache and must not be changed. */
+    static Tree read(String sha1) {
+        if (ObjectCache.get(sha1) instanceof Tree cached) {
+            return cached;
+        }
+        byte[] data = readRawObject(sha1);
+        if (data == null) {
+            throw error("No tree %s.", sha1);
+        }
+        Tree result = Codec.decodeTree(data);
+        ObjectCache.put(sha1, result, data.length);
+        return result;
+    }
+
+    /** Store this tree, unless it is already stored, and return its
+     *  sha1. */
+    String write() {
+        byte[] data = Codec.encode(this);
+        String sha1 = sha1(data);
+        if (!hasObject(sha1)) {
+            File dest = getObjectsFile(sha1);
+            dest.getParentFile().mkdir();
+            writeContents(dest, data);
+        }
+        return sha1;
+    }
+
+    /** Return the sha1 of the tree made from the tree ROOT (null for an
+     *  empty one) by CHANGES, a map from file path to the sha1 of its new
+     *  blob, or to null if the file is removed.  Only the trees of the
+     *  directories of the changed paths are read and written. */
+    static String update(String root, SortedMap<String, String> changes) {
+        String result = updateDir(root, new TreeMap<>(changes));
+        return result == null ? new Tree().write() : result;
+    }
+
+    /** Return the sha1 of the tree made from the tree DIR (null for an
+     *  empty one) by CHANGES, whose paths are relative to it, or null if
+     *  the result is empty. */
+    private static String updateDir(String dir,
+                                    SortedMap<String, String> changes) {
+        Tree tree = new Tree();
+        if (dir != null) {
+            tree.entries.putAll(read(dir).entries);
+        }
+        while (!changes.isEmpty()) {
+            String path = changes.firstKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                String sha1 = changes.remove(path);
+                if (sha1 == null) {
+                    tree.entries.remove(path);
+                } else {
+                    tree.entries.put(path, sha1);
+                }
+                continue;
+            }
+            String name = path.substring(0, slash + 1);
+            SortedMap<String, String> inside =
+                changes.subMap(name, name.substring(0, slash) + "0");
+            TreeMap<String, String> relative = new TreeMap<>();
+            for (Map.Entry<String, String> entry : inside.entrySet()) {
+                relative.put(entry.getKey().substring(slash + 1),
+                             entry.getValue());
+            }
+            inside.clear();
+            String sub = updateDir(tree.entries.get(name), relative);
+            if (sub == null) {
+                tree.entries.remove(name);
+            } else {
+                tree.entries.put(name, sub);
+            }
+        }
+        return tree.entries.isEmpty() ? null : tree.write();
+    }
+
+    /** Return the sha1 of the blob at PATH in the tree ROOT, or null if
+     *  there is none.  Reads only the trees on PATH. */
+    static String lookup(String root, String path) {
+        String sha1 = root;
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', start)) {
+            sha1 = read(sha1).entries.get(path.substring(start, slash + 1));
+            if (sha1 == null) {
+                return null;
+            }
+            start = slash + 1;
+        }
+        return read(sha1).entries.get(path.substring(start));
+    }
+
+    /** Return the files that differ between the trees FROM and TO, by
+     *  path, each mapped to its blob in TO, or to null if TO lacks it.
+     *  Subtrees with the same sha1 on both sides are skipped unread. */
+    static TreeMap<String, String> diff(String from, String to) {
+        TreeMap<String, String> result = new TreeMap<>();
+        diff(from, to, "", result);
+        return result;
+    }
+
+    /** Add the differences between the trees FROM and TO (either null
+     *  for an empty tree) to RESULT, as for diff, prefixing their paths
+     *  with PREFIX. */
+    private static void diff(String from, String to, String prefix,
+                             Map<String, String> result) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Map<String, String> before = from == null ? Map.of()
+            : read(from).entries;
+        Map<String, String> after = to == null ? Map.of() : read(to).entries;
+        TreeSet<String> names = new TreeSet<>(before.keySet());
+        names.addAll(after.keySet());
+        for (String name : names) {
+            String old = before.get(name), sha1 = after.get(name);
+            if (old != null && old.equals(sha1)) {
+                continue;
+            } else if (name.endsWith("/")) {
+                diff(old, sha1, prefix + name, result);
+            } else {
+                result.put(prefix + name, sha1);
+            }
+        }
+    }
+
+    /** Return the sha1 of each entry of this tree, by name. */
+    SortedMap<String, String> entries() {
+        return Collections.unmodifiableSortedMap(entries);
+    }
+
+    /** Return the files of the tree ROOT, by path. */
+    static HashMap<String, Index> flatten(String root) {
+        HashMap<String, Index> result = new HashMap<>();
+        flatten(root, "", result);
+        return result;
+    }
+
+    /** Add the files of the tree SHA1 to RESULT, by path, prefixing
+     *  their paths with PREFIX. */
+    private static void flatten(String sha1, String prefix,
+                                Map<String, Index> result) {
+        for (Map.Entry<String, String> entry
+                 : read(sha1).entries.entrySet()) {
+            String path = prefix + entry.getKey();
+            if (path.endsWith("/")) {
+                flatten(entry.getValue(), path, result);
+            } else {
+                result.put(path, new Index(entry.getValue(), path));
+            }
+        }
+    }
+
+    /** Write the entries of this tree to OUT, in the encoding of
+     *  Codec. */
+    void writeTo(Codec.Output out) {
+        out.write(Codec.TREE);
+        out.writeVarint(entries.size());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeId(entry.getValue());
+        }
+    }
+
+    /** Return the tree whose entries, as written by writeTo, are next in
+     *  IN. */
+    static Tree readFrom(Codec.Input in) {
+        if (in.readByte() != Codec.TREE) {
+            throw error("Not a tree.");
+        }
+        Tree result = new Tree();
+        for (int n = in.readInt(); n > 0; n -= 1) {
+            String name = in.readString();
+            result.entries.put(name, in.readId());
+        }
+        return result;
+    }
+
+    /** The sha1 of each entry, by name. */
+    private final TreeMap<String, String> entries;
+}
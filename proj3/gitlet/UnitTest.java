@@ -1,5 +1,11 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -12,7 +18,43 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class, LockTest.class,
+                                      CommitGraphTest.class,
+                                      MigrateTest.class, DiffTest.class,
+                                      PackTest.class, PackIndexTest.class,
+                                      ChunkerTest.class, BitmapsTest.class,
+                                      CheckoutTest.class));
+    }
+
+    /** Return a new, empty directory for a repository.  Gitlet works in
+     *  the current directory, which Java cannot change, so tests run it
+     *  there in processes of their own. */
+    static File tempDir() throws IOException {
+        return java.nio.file.Files.createTempDirectory("gitlet").toFile();
+    }
+
+    /** Run the main method of class MAIN with ARGS in a new process whose
+     *  current directory is DIR, and return its output.  The class path
+     *  is made absolute, since make runs the tests with "..". */
+    static String run(File dir, String main, String... args)
+        throws IOException, InterruptedException {
+        List<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                classPath.add(new File(entry).getAbsolutePath());
+            }
+        }
+        List<String> command = new ArrayList<>(List.of(
+            Path.of(System.getProperty("java.home"), "bin", "java")
+            .toString(),
+            "-cp", String.join(File.pathSeparator, classPath), main));
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        process.waitFor();
+        return output;
     }
 
     /** A dummy test to avoid complaint. */
@@ -2,7 +2,7 @@
  * University of California.  All rights reserved. */
 package gitlet;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -11,7 +11,10 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -20,6 +23,8 @@ import java.util.Arrays;
 import java.util.Formatter;
 import java.util.List;
 
+import static java.nio.file.StandardOpenOption.*;
+
 /** Assorted utilities.
  *  @author P. N. Hilfinger
  */
@@ -110,25 +115,32 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  either a String or a byte array.  The bytes go to a temporary file
+     *  that then replaces FILE by a rename, so that FILE is never seen
+     *  half-written, and are flushed as Journal.durability asks.  Throws
+     *  IllegalArgumentException in case of problems. */
     static void writeContents(File file, Object... contents) {
+        Path tmp = Journal.tempFile(file);
         try {
             if (file.isDirectory()) {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
-            BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
-            for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+            try (FileChannel out = FileChannel.open(tmp, CREATE, WRITE,
+                                                    TRUNCATE_EXISTING)) {
+                for (Object obj : contents) {
+                    ByteBuffer buf = ByteBuffer.wrap(obj instanceof byte[]
+                        ? (byte[]) obj
+                        : ((String) obj).getBytes(StandardCharsets.UTF_8));
+                    while (buf.hasRemaining()) {
+                        out.write(buf);
+                    }
                 }
+                Journal.written(out);
             }
-            str.close();
+            Journal.replace(tmp, file);
         } catch (IOException | ClassCastException excp) {
+            tmp.toFile().delete();
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
@@ -213,6 +225,23 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
 
 
     /* MESSAGES AND ERROR REPORTING */